@@ -44,7 +44,12 @@
  * a licensee so wish it.
  */
 #include <stddef.h>
+#include <stdint.h>
 #include <string.h>
+#if defined(__GLIBC__)
+#include <malloc.h>
+#endif
+#include <pthread.h>
 #include <liblognorm.h>
 #include <lognorm.h>
 
@@ -59,6 +64,49 @@ typedef struct NormalizedStruct_TAG {
     json_object *jref;
 }NormalizedStruct;
 
+typedef struct MemoryStatsStruct_TAG {
+    int64_t liveContexts;
+    int64_t peakContexts;
+    int64_t rulebaseBytes;
+    int64_t peakRulebaseBytes;
+    int64_t liveResults;
+    int64_t peakResults;
+    int64_t arenaBytes;
+    int64_t peakArenaBytes;
+}MemoryStatsStruct;
+
+// Process wide native memory accounting, updated atomically as contexts, results and arenas may live in any thread.
+static MemoryStatsStruct memoryStatistics;
+
+// The context handed to java. ln_ctx must remain the first member, all functions receive the context as ln_ctx *.
+typedef struct JavaLognormCtx_TAG {
+    ln_ctx ctx;
+    int64_t rulebaseBytes;
+}JavaLognormCtx;
+
+static void raisePeak(int64_t *peak, int64_t value) {
+    int64_t current = __atomic_load_n(peak, __ATOMIC_RELAXED);
+    while (value > current && !__atomic_compare_exchange_n(peak, &current, value, 0, __ATOMIC_RELAXED, __ATOMIC_RELAXED)) {
+        // current was reloaded by the failed exchange
+    }
+}
+
+static void account(int64_t *live, int64_t *peak, int64_t delta) {
+    int64_t value = __atomic_add_fetch(live, delta, __ATOMIC_RELAXED);
+    raisePeak(peak, value);
+}
+
+void memoryStats(MemoryStatsStruct *stats) {
+    stats->liveContexts = __atomic_load_n(&memoryStatistics.liveContexts, __ATOMIC_RELAXED);
+    stats->peakContexts = __atomic_load_n(&memoryStatistics.peakContexts, __ATOMIC_RELAXED);
+    stats->rulebaseBytes = __atomic_load_n(&memoryStatistics.rulebaseBytes, __ATOMIC_RELAXED);
+    stats->peakRulebaseBytes = __atomic_load_n(&memoryStatistics.peakRulebaseBytes, __ATOMIC_RELAXED);
+    stats->liveResults = __atomic_load_n(&memoryStatistics.liveResults, __ATOMIC_RELAXED);
+    stats->peakResults = __atomic_load_n(&memoryStatistics.peakResults, __ATOMIC_RELAXED);
+    stats->arenaBytes = __atomic_load_n(&memoryStatistics.arenaBytes, __ATOMIC_RELAXED);
+    stats->peakArenaBytes = __atomic_load_n(&memoryStatistics.peakArenaBytes, __ATOMIC_RELAXED);
+}
+
 typedef void(*ErrorCallback)(void __attribute__((unused)) *cookie, const char *msg, size_t __attribute__((unused)) lenMsg);
 
 typedef void(*DebugCallback)(void __attribute__((unused)) *cookie, const char *msg, size_t __attribute__((unused)) lenMsg);
@@ -68,23 +116,58 @@ const char *version() {
 }
 
 void *initCtx() {
-    ln_ctx *ctx = malloc(sizeof(ln_ctx));
-    if((*ctx = ln_initCtx()) == NULL) {
+    JavaLognormCtx *ctx = calloc(1, sizeof(JavaLognormCtx));
+    if (ctx == NULL) {
+        return NULL;
+    }
+    if((ctx->ctx = ln_initCtx()) == NULL) {
         // Exception handling is done in java. ln_initCtx() is designed to return null if error occurred.
+        free(ctx);
         return NULL;
     }
+    account(&memoryStatistics.liveContexts, &memoryStatistics.peakContexts, 1);
     return ctx;
 }
 
 int exitCtx(ln_ctx *context) {
+    JavaLognormCtx *ctx = (JavaLognormCtx *) context;
     int rv = -1;
-    if (*context) {
-        rv = ln_exitCtx(*context);
+    if (ctx->ctx) {
+        rv = ln_exitCtx(ctx->ctx);
     }
-    free(context);
+    account(&memoryStatistics.rulebaseBytes, &memoryStatistics.peakRulebaseBytes, -ctx->rulebaseBytes);
+    account(&memoryStatistics.liveContexts, &memoryStatistics.peakContexts, -1);
+    free(ctx);
     return rv;
 }
 
+int64_t rulebaseBytes(ln_ctx *context) {
+    return ((JavaLognormCtx *) context)->rulebaseBytes;
+}
+
+// liblognorm does not report the size of the parse DAG, so it is estimated as the growth of the process heap while
+// the rulebase is loaded. Loads are not serialized, so allocations and frees made by other threads during a load,
+// including concurrent loads, are included in the estimate. The estimate needs mallinfo2() of glibc 2.33 or later
+// and is 0 elsewhere.
+
+static size_t heapInUse(void) {
+#if defined(__GLIBC__) && (__GLIBC__ > 2 || (__GLIBC__ == 2 && __GLIBC_MINOR__ >= 33))
+    struct mallinfo2 info = mallinfo2();
+    // large chunks are mmapped and are not part of uordblks
+    return info.uordblks + info.hblkhd;
+#else
+    return 0;
+#endif
+}
+
+static void accountRulebase(ln_ctx *context, size_t heapBefore) {
+    JavaLognormCtx *ctx = (JavaLognormCtx *) context;
+    size_t heapAfter = heapInUse();
+    int64_t bytes = heapAfter > heapBefore ? (int64_t) (heapAfter - heapBefore) : 0;
+    ctx->rulebaseBytes += bytes;
+    account(&memoryStatistics.rulebaseBytes, &memoryStatistics.peakRulebaseBytes, bytes);
+}
+
 void setCtxOpts(ln_ctx *ctx, OptionsStruct *opts) {
     unsigned ctxOpts = 0;
     if (opts->CTXOPT_ADD_ORIGINALMSG != 0) {
@@ -100,40 +183,349 @@ void setCtxOpts(ln_ctx *ctx, OptionsStruct *opts) {
 }
 
 int loadSamples(ln_ctx *context, char *filename) {
-    return ln_loadSamples(*context, filename);
+    size_t heapBefore = heapInUse();
+    int rv = ln_loadSamples(*context, filename);
+    accountRulebase(context, heapBefore);
+    return rv;
 }
 
 int loadSamplesFromString(ln_ctx *context, char *string) {
-    return ln_loadSamplesFromString(*context, string);
+    size_t heapBefore = heapInUse();
+    int rv = ln_loadSamplesFromString(*context, string);
+    accountRulebase(context, heapBefore);
+    return rv;
 }
 
 int hasAdvancedStats() {
     return ln_hasAdvancedStats();
 }
 
-NormalizedStruct* normalize(ln_ctx *context, char *line, NormalizedStruct* norm) {
-    ln_ctx ctx = *context;
+// Each arena record is laid out as: int32 rv, int32 length, json bytes, NUL, padding to 8 bytes.
+#define ARENA_HEADER (2 * sizeof(int32_t))
+#define ARENA_RECORD(length) (((ARENA_HEADER + (length) + 1) + 7) & ~((size_t) 7))
+
+typedef struct ResultArena_TAG {
+    char *data;
+    size_t capacity;
+    size_t used;
+    size_t highWater;
+    int64_t overflows;
+}ResultArena;
+
+void *initArena(int capacity) {
+    if (capacity < 1) {
+        return NULL;
+    }
+    ResultArena *arena = calloc(1, sizeof(ResultArena));
+    if (arena == NULL) {
+        return NULL;
+    }
+    if ((arena->data = malloc(capacity)) == NULL) {
+        free(arena);
+        return NULL;
+    }
+    arena->capacity = capacity;
+    account(&memoryStatistics.arenaBytes, &memoryStatistics.peakArenaBytes, capacity);
+    return arena;
+}
+
+void exitArena(ResultArena *arena) {
+    account(&memoryStatistics.arenaBytes, &memoryStatistics.peakArenaBytes, -(int64_t) arena->capacity);
+    free(arena->data);
+    free(arena);
+}
+
+void resetArena(ResultArena *arena) {
+    arena->used = 0;
+}
+
+char *arenaData(ResultArena *arena) {
+    return arena->data;
+}
+
+int arenaCapacity(ResultArena *arena) {
+    return (int) arena->capacity;
+}
+
+int arenaUsed(ResultArena *arena) {
+    return (int) arena->used;
+}
+
+int arenaHighWater(ResultArena *arena) {
+    return (int) arena->highWater;
+}
+
+int64_t arenaOverflows(ResultArena *arena) {
+    return arena->overflows;
+}
+
+static int growArena(ResultArena *arena, size_t needed) {
+    size_t capacity = arena->capacity;
+    while (capacity < needed) {
+        capacity *= 2;
+    }
+    if (capacity > INT32_MAX) {
+        return -1;
+    }
+    char *data = realloc(arena->data, capacity);
+    if (data == NULL) {
+        return -1;
+    }
+    account(&memoryStatistics.arenaBytes, &memoryStatistics.peakArenaBytes, (int64_t) (capacity - arena->capacity));
+    arena->data = data;
+    arena->capacity = capacity;
+    return 0;
+}
+
+static int appendToArena(ResultArena *arena, int rv, const char *json) {
+    size_t length = strlen(json);
+    size_t record = ARENA_RECORD(length);
+    if (arena->used + record > arena->capacity) {
+        arena->overflows++;
+        return -1;
+    }
+    int offset = (int) arena->used;
+    int32_t header[2] = { rv, (int32_t) length };
+    memcpy(arena->data + offset, header, ARENA_HEADER);
+    memcpy(arena->data + offset + ARENA_HEADER, json, length + 1);
+    arena->used += record;
+    if (arena->used > arena->highWater) {
+        arena->highWater = arena->used;
+    }
+    return offset;
+}
+
+static json_object *normalizeLine(ln_ctx ctx, const char *line, size_t length, int *rv) {
     struct json_object *jobj = json_object_new_object();
-    int i = ln_normalize(ctx, line, strlen(line), &jobj);
-    norm->rv = i;
+    *rv = ln_normalize(ctx, line, length, &jobj);
     if (jobj == NULL) {
        // jobj was null, create new generic jobj for error logging.
        jobj = json_object_new_object();
        json_object_object_add(jobj, "Error", json_object_new_string("Error occurred during ln_normalize()"));
-    	norm->jref = jobj;
-    } else {
-       // jobj was not null
-    	norm->jref = jobj;
     }
+    return jobj;
+}
+
+NormalizedStruct* normalize(ln_ctx *context, char *line, NormalizedStruct* norm) {
+    int rv = 0;
+    norm->jref = normalizeLine(*context, line, strlen(line), &rv);
+    account(&memoryStatistics.liveResults, &memoryStatistics.peakResults, 1);
+    norm->rv = rv;
     return norm;
 }
 
+int normalizeToArena(ln_ctx *context, const char *line, int length, ResultArena *arena) {
+    int rv = 0;
+    json_object *jobj = normalizeLine(*context, line, length, &rv);
+    int offset = appendToArena(arena, rv, json_object_to_json_string(jobj));
+    json_object_put(jobj);
+    return offset;
+}
+
+int normalizeRangeToArena(ln_ctx *context, const char *buffer, int offset, int length, ResultArena *arena) {
+    return normalizeToArena(context, buffer + offset, length, arena);
+}
+
+// Normalizes once and grows the arena to fit the result instead of failing, for callers keeping a single result.
+int normalizeRangeToGrowingArena(ln_ctx *context, const char *buffer, int offset, int length, ResultArena *arena) {
+    int rv = 0;
+    json_object *jobj = normalizeLine(*context, buffer + offset, length, &rv);
+    const char *json = json_object_to_json_string(jobj);
+    size_t needed = arena->used + ARENA_RECORD(strlen(json));
+    int resultOffset = -1;
+    if (needed <= arena->capacity || growArena(arena, needed) == 0) {
+        resultOffset = appendToArena(arena, rv, json);
+    }
+    else {
+        arena->overflows++;
+    }
+    json_object_put(jobj);
+    return resultOffset;
+}
+
+typedef struct BatchPool_TAG BatchPool;
+
+typedef struct BatchWorker_TAG {
+    BatchPool *pool;
+    ln_ctx ctx;
+    pthread_t thread;
+}BatchWorker;
+
+struct BatchPool_TAG {
+    int workers;
+    BatchWorker *worker;
+    pthread_mutex_t lock;
+    pthread_cond_t start;
+    pthread_cond_t done;
+    unsigned long generation;
+    int shutdown;
+    int running;
+    // Current batch, valid while running > 0.
+    const char *packed;
+    const int *offsets;
+    const int *lengths;
+    int count;
+    int next;
+    int chunk;
+    int *rvs;
+    json_object **jrefs;
+};
+
+static void *batchWorker(void *arg) {
+    BatchWorker *worker = arg;
+    BatchPool *pool = worker->pool;
+    unsigned long seen = 0;
+    pthread_mutex_lock(&pool->lock);
+    for (;;) {
+        while (!pool->shutdown && pool->generation == seen) {
+            pthread_cond_wait(&pool->start, &pool->lock);
+        }
+        if (pool->shutdown) {
+            break;
+        }
+        seen = pool->generation;
+        while (pool->next < pool->count) {
+            // Claim a chunk of messages so that workers do not contend on the lock per message.
+            int first = pool->next;
+            int last = first + pool->chunk < pool->count ? first + pool->chunk : pool->count;
+            pool->next = last;
+            pthread_mutex_unlock(&pool->lock);
+            for (int i = first; i < last; i++) {
+                json_object *jobj = normalizeLine(worker->ctx, pool->packed + pool->offsets[i], pool->lengths[i], &pool->rvs[i]);
+                // Serialize in the worker, json-c caches the string in the object for the copy phase.
+                json_object_to_json_string(jobj);
+                pool->jrefs[i] = jobj;
+            }
+            pthread_mutex_lock(&pool->lock);
+        }
+        if (--pool->running == 0) {
+            pthread_cond_signal(&pool->done);
+        }
+    }
+    pthread_mutex_unlock(&pool->lock);
+    return NULL;
+}
+
+static void stopBatchWorkers(BatchPool *pool, int started) {
+    pthread_mutex_lock(&pool->lock);
+    pool->shutdown = 1;
+    pthread_cond_broadcast(&pool->start);
+    pthread_mutex_unlock(&pool->lock);
+    for (int i = 0; i < started; i++) {
+        pthread_join(pool->worker[i].thread, NULL);
+    }
+    pthread_cond_destroy(&pool->done);
+    pthread_cond_destroy(&pool->start);
+    pthread_mutex_destroy(&pool->lock);
+    free(pool->worker);
+    free(pool);
+}
+
+void *initBatchPool(ln_ctx **contexts, int workers) {
+    if (workers < 1) {
+        return NULL;
+    }
+    BatchPool *pool = calloc(1, sizeof(BatchPool));
+    if (pool == NULL) {
+        return NULL;
+    }
+    pool->workers = workers;
+    pool->worker = calloc(workers, sizeof(BatchWorker));
+    if (pool->worker == NULL) {
+        free(pool);
+        return NULL;
+    }
+    pthread_mutex_init(&pool->lock, NULL);
+    pthread_cond_init(&pool->start, NULL);
+    pthread_cond_init(&pool->done, NULL);
+    for (int i = 0; i < workers; i++) {
+        pool->worker[i].pool = pool;
+        pool->worker[i].ctx = *contexts[i];
+        if (pthread_create(&pool->worker[i].thread, NULL, batchWorker, &pool->worker[i]) != 0) {
+            // Exception handling is done in java, NULL signals that the pool could not be started.
+            stopBatchWorkers(pool, i);
+            return NULL;
+        }
+    }
+    return pool;
+}
+
+void exitBatchPool(BatchPool *pool) {
+    stopBatchWorkers(pool, pool->workers);
+}
+
+int normalizeBatch(BatchPool *pool, const char *packed, const int *offsets, const int *lengths, int count, ResultArena *arena, int *resultOffsets) {
+    json_object **jrefs = calloc(count > 0 ? count : 1, sizeof(json_object *));
+    int *rvs = calloc(count > 0 ? count : 1, sizeof(int));
+    if (jrefs == NULL || rvs == NULL) {
+        free(jrefs);
+        free(rvs);
+        return -1;
+    }
+    pthread_mutex_lock(&pool->lock);
+    pool->packed = packed;
+    pool->offsets = offsets;
+    pool->lengths = lengths;
+    pool->count = count;
+    pool->next = 0;
+    pool->chunk = count / (pool->workers * 8) > 0 ? count / (pool->workers * 8) : 1;
+    pool->rvs = rvs;
+    pool->jrefs = jrefs;
+    pool->running = pool->workers;
+    pool->generation++;
+    pthread_cond_broadcast(&pool->start);
+    while (pool->running > 0) {
+        pthread_cond_wait(&pool->done, &pool->lock);
+    }
+    pthread_mutex_unlock(&pool->lock);
+
+    // Copy the serialized results into the arena, growing it once if the batch does not fit.
+    size_t needed = arena->used;
+    for (int i = 0; i < count; i++) {
+        needed += ARENA_RECORD(strlen(json_object_to_json_string(jrefs[i])));
+    }
+    int rv = 0;
+    if (needed > arena->capacity && growArena(arena, needed) != 0) {
+        arena->overflows++;
+        rv = -1;
+    }
+    for (int i = 0; i < count; i++) {
+        if (rv == 0) {
+            resultOffsets[i] = appendToArena(arena, rvs[i], json_object_to_json_string(jrefs[i]));
+        }
+        json_object_put(jrefs[i]);
+    }
+    free(jrefs);
+    free(rvs);
+    return rv;
+}
+
 char *readResult(struct json_object *jref) {
     return (char*)json_object_to_json_string(jref);
 }
 
+// Points names and values to the top level fields of the result. Strings are returned as they are, other values such
+// as nested objects, arrays, numbers and booleans are serialized by json_object_get_string. The value lengths are
+// measured from the returned strings, as json_object_get_string_len is 0 for values that are not strings.
+// Returns the number of fields, which is larger than max if the arrays were too small.
+int readFields(struct json_object *jref, const char **names, const char **values, int *nameLengths, int *valueLengths, int max) {
+    int count = 0;
+    json_object_object_foreach(jref, key, val) {
+        if (count < max) {
+            const char *value = val == NULL ? NULL : json_object_get_string(val);
+            names[count] = key;
+            nameLengths[count] = (int) strlen(key);
+            values[count] = value;
+            valueLengths[count] = value == NULL ? 0 : (int) strlen(value);
+        }
+        count++;
+    }
+    return count;
+}
+
 void destroyResult(struct json_object *jref) {
     json_object_put(jref);
+    account(&memoryStatistics.liveResults, &memoryStatistics.peakResults, -1);
 }
 
 void enableDebug(ln_ctx *ctx, int i) {
@@ -0,0 +1,169 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Normalizes batches of messages with a native worker pool. The whole batch is handed over to C with a single call,
+ * where each worker thread normalizes a share of the messages with its own liblognorm context.
+ */
+public final class BatchLognormImpl implements BatchLognorm, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchLognormImpl.class);
+
+    private final Pointer pool;
+    private final List<Pointer> ctxs;
+    private final ResultArena arena;
+    private Memory packed;
+
+    public BatchLognormImpl(final Pointer pool, final List<Pointer> ctxs, final ResultArena arena) {
+        this.pool = pool;
+        this.ctxs = ctxs;
+        this.arena = arena;
+        this.packed = new Memory(1);
+    }
+
+    /**
+     * Return the number of native workers normalizing the batches.
+     *
+     * @return number of workers
+     */
+    public int workers() {
+        return ctxs.size();
+    }
+
+    /**
+     * Return the highest number of bytes the results of a single batch have used in the result arena.
+     *
+     * @return high-water mark in bytes
+     */
+    public synchronized int highWaterMark() {
+        return arena.highWaterMark();
+    }
+
+    @Override
+    public synchronized List<BatchResult> normalize(final List<String> lines) {
+        if (pool == Pointer.NULL) {
+            throw new IllegalArgumentException("pool not initialized. Use LogNormFactory to initialize the pool.");
+        }
+        if (lines.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final int count = lines.size();
+        final byte[][] encoded = new byte[count][];
+        final int[] offsets = new int[count];
+        final int[] lengths = new int[count];
+        long size = 0;
+        for (int i = 0; i < count; i++) {
+            encoded[i] = lines.get(i).getBytes(StandardCharsets.UTF_8);
+            offsets[i] = (int) size;
+            lengths[i] = encoded[i].length;
+            size += lengths[i];
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                    "Batch of " + size + " bytes is too large, split it into smaller batches"
+            );
+        }
+        if (packed.size() < size) {
+            packed = new Memory(size);
+        }
+        for (int i = 0; i < count; i++) {
+            packed.write(offsets[i], encoded[i], 0, lengths[i]);
+        }
+
+        // The arena is reused for every batch, it grows only when a batch does not fit.
+        arena.reset();
+        final int[] resultOffsets = new int[count];
+        final int rv = LibJavaLognorm.jnaInstance
+                .normalizeBatch(pool, packed, offsets, lengths, count, arena.pointer(), resultOffsets);
+        if (rv != 0) {
+            throw new IllegalArgumentException("normalizeBatch() failed to store the results into the result arena");
+        }
+        arena.refresh();
+        final List<BatchResult> results = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            results.add(new BatchResult(arena.returnCode(resultOffsets[i]), arena.json(resultOffsets[i])));
+        }
+        return results;
+    }
+
+    /**
+     * Stops the native workers and discards the library contexts used by them.
+     *
+     * @throws IllegalArgumentException Throws if closing fails.
+     */
+    @Override
+    public synchronized void close() throws IllegalArgumentException {
+        if (pool == Pointer.NULL) {
+            throw new IllegalArgumentException("pool not initialized. Use LogNormFactory to initialize the pool.");
+        }
+        LibJavaLognorm.jnaInstance.exitBatchPool(pool);
+        arena.close();
+        int failed = 0;
+        for (final Pointer ctx : ctxs) {
+            final int i = LibJavaLognorm.jnaInstance.exitCtx(ctx);
+            if (i != 0) {
+                LOGGER.error("ln_exitCtx() returned error code <{}>", i);
+                failed++;
+            }
+        }
+        if (failed != 0) {
+            throw new IllegalArgumentException(
+                    "ln_exitCtx() failed for " + failed + " of " + ctxs.size() + " contexts"
+            );
+        }
+    }
+}
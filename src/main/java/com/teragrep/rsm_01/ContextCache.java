@@ -0,0 +1,199 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Pointer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds ready to use liblognorm contexts with their rulebase already loaded. liblognorm can not serialize a compiled
+ * rulebase, so the cache keeps whole contexts that were built ahead of time by LognormFactory.prewarm() and hands them
+ * out from LognormFactory.lognorm(). Contexts are keyed by a hash of the rulebase content and the context options, so
+ * a cache can be shared between factories. Contexts that are never taken stay allocated until the cache is closed.
+ */
+public final class ContextCache implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContextCache.class);
+
+    private final Map<String, Queue<Pointer>> idle;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong timeToReadyNanos;
+
+    public ContextCache() {
+        this(new ConcurrentHashMap<>(), new AtomicLong(), new AtomicLong(), new AtomicLong());
+    }
+
+    public ContextCache(
+            final Map<String, Queue<Pointer>> idle,
+            final AtomicLong hits,
+            final AtomicLong misses,
+            final AtomicLong timeToReadyNanos
+    ) {
+        this.idle = idle;
+        this.hits = hits;
+        this.misses = misses;
+        this.timeToReadyNanos = timeToReadyNanos;
+    }
+
+    /**
+     * Take a ready context for the given key.
+     *
+     * @param key Rulebase and options key.
+     * @return Pointer to the liblognorm context, null pointer if there is none.
+     */
+    Pointer take(final String key) {
+        final Queue<Pointer> contexts = idle.get(key);
+        Pointer ctx = Pointer.NULL;
+        if (contexts != null) {
+            ctx = contexts.poll();
+        }
+        if (ctx == Pointer.NULL) {
+            misses.incrementAndGet();
+        }
+        else {
+            hits.incrementAndGet();
+        }
+        return ctx;
+    }
+
+    /**
+     * Store a ready context for the given key.
+     *
+     * @param key Rulebase and options key.
+     * @param ctx Pointer to the liblognorm context.
+     */
+    void put(final String key, final Pointer ctx) {
+        idle.computeIfAbsent(key, k -> new ConcurrentLinkedQueue<>()).add(ctx);
+    }
+
+    /**
+     * Return true if there are no ready contexts for any key.
+     *
+     * @return true if the cache is empty
+     */
+    boolean isEmpty() {
+        boolean empty = true;
+        for (final Queue<Pointer> contexts : idle.values()) {
+            empty &= contexts.isEmpty();
+        }
+        return empty;
+    }
+
+    /**
+     * Records the time it took to make contexts ready.
+     *
+     * @param nanos Time to ready in nanoseconds.
+     */
+    void timeToReady(final long nanos) {
+        timeToReadyNanos.set(nanos);
+    }
+
+    /**
+     * Return the number of lognorm() calls served with a ready context.
+     *
+     * @return number of cache hits
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * Return the number of lognorm() calls that had to build a context.
+     *
+     * @return number of cache misses
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * Return the number of ready contexts for all keys.
+     *
+     * @return number of idle contexts
+     */
+    public int size() {
+        int size = 0;
+        for (final Queue<Pointer> contexts : idle.values()) {
+            size += contexts.size();
+        }
+        return size;
+    }
+
+    /**
+     * Return the time the latest prewarm took to build and warm up its contexts.
+     *
+     * @return time to ready
+     */
+    public Duration timeToReady() {
+        return Duration.ofNanos(timeToReadyNanos.get());
+    }
+
+    /**
+     * Discards the contexts that were never taken from the cache.
+     */
+    @Override
+    public void close() {
+        for (final Queue<Pointer> contexts : idle.values()) {
+            Pointer ctx = contexts.poll();
+            while (ctx != Pointer.NULL) {
+                final int i = LibJavaLognorm.jnaInstance.exitCtx(ctx);
+                if (i != 0) {
+                    LOGGER.error("ln_exitCtx() returned error code <{}>", i);
+                }
+                ctx = contexts.poll();
+            }
+        }
+    }
+}
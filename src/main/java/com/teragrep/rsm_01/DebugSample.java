@@ -0,0 +1,101 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.List;
+
+/**
+ * A message that failed to normalize, with the liblognorm debug trace of normalizing it.
+ */
+public final class DebugSample {
+
+    private final String line;
+    private final int rv;
+    private final List<String> trace;
+
+    public DebugSample(final String line, final int rv, final List<String> trace) {
+        this.line = line;
+        this.rv = rv;
+        this.trace = trace;
+    }
+
+    /**
+     * Return the message that failed to normalize.
+     *
+     * @return message as given to liblognorm
+     */
+    public String line() {
+        return line;
+    }
+
+    /**
+     * Return the value returned by ln_normalize() for the message.
+     *
+     * @return liblognorm error code
+     */
+    public int returnCode() {
+        return rv;
+    }
+
+    /**
+     * Return the debug messages liblognorm emitted while normalizing the message.
+     *
+     * @return debug trace in the order it was emitted
+     */
+    public List<String> trace() {
+        return trace;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sample = new StringBuilder();
+        sample.append("ln_normalize() returned ").append(rv).append(" for <").append(line).append(">\n");
+        for (final String message : trace) {
+            sample.append("  ").append(message).append('\n');
+        }
+        return sample.toString();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Pointer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Captures liblognorm debug traces for a rate-limited sample of the messages that fail to normalize. Debug output
+ * stays disabled for the rest of the traffic: a sampled message is normalized once more with ln_enableDebug() turned
+ * on for the duration of that call only, and the trace is kept with the message in a bounded buffer where the oldest
+ * samples are dropped first. Thread-safe.
+ */
+public final class DebugSampler {
+
+    private static final int MAX_TRACE_LINES = 1000;
+
+    private final SamplingRate rate;
+    private final int capacity;
+    private final Deque<DebugSample> samples;
+    private final ThreadLocal<List<String>> trace;
+    private final LongAdder sampled;
+    // referenced for as long as the contexts use it, JNA callbacks are released when collected
+    private final LibJavaLognorm.DebugCallback callback;
+
+    /**
+     * Sampling is disabled.
+     */
+    public DebugSampler() {
+        this(new SamplingRate(SamplingMode.ONE_IN_N, 1), 0);
+    }
+
+    /**
+     * @param rate     Rate of the failed messages to capture the debug trace for.
+     * @param capacity Maximum number of samples kept, 0 disables sampling.
+     */
+    public DebugSampler(final SamplingRate rate, final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Sample capacity must not be negative, got " + capacity);
+        }
+        this.rate = rate;
+        this.capacity = capacity;
+        this.samples = new ArrayDeque<>(Math.min(capacity, 1024));
+        this.trace = new ThreadLocal<>();
+        this.sampled = new LongAdder();
+        this.callback = new TraceCallback(trace);
+    }
+
+    /**
+     * Return the captured samples, oldest first.
+     *
+     * @return copy of the captured samples
+     */
+    public List<DebugSample> samples() {
+        synchronized (samples) {
+            return Collections.unmodifiableList(new ArrayList<>(samples));
+        }
+    }
+
+    /**
+     * Discards the captured samples.
+     */
+    public void clear() {
+        synchronized (samples) {
+            samples.clear();
+        }
+    }
+
+    /**
+     * Return the number of failed messages a debug trace was captured for, including samples dropped from the buffer.
+     *
+     * @return number of sampled messages
+     */
+    public long sampled() {
+        return sampled.sum();
+    }
+
+    /**
+     * Return the number of failed messages that were not sampled because of the rate limit.
+     *
+     * @return number of failed messages that were not sampled
+     */
+    public long skipped() {
+        return rate.rejected();
+    }
+
+    boolean enabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Return true if a debug trace should be captured for a failed message.
+     *
+     * @return true if the message is sampled
+     */
+    boolean sample() {
+        return enabled() && rate.admit();
+    }
+
+    LibJavaLognorm.DebugCallback callback() {
+        return callback;
+    }
+
+    /**
+     * Starts collecting the debug messages liblognorm emits on the calling thread.
+     */
+    void startTrace() {
+        trace.set(new ArrayList<>());
+    }
+
+    /**
+     * Stores the collected debug messages together with the message.
+     *
+     * @param line Message that was normalized with debug output enabled.
+     * @param rv   Value returned by ln_normalize().
+     */
+    void record(final String line, final int rv) {
+        final List<String> messages = trace.get();
+        trace.remove();
+        final DebugSample sample = new DebugSample(
+                line,
+                rv,
+                Collections.unmodifiableList(messages == null ? new ArrayList<>() : messages)
+        );
+        sampled.increment();
+        synchronized (samples) {
+            if (samples.size() >= capacity) {
+                samples.pollFirst();
+            }
+            samples.addLast(sample);
+        }
+    }
+
+    private static final class TraceCallback implements LibJavaLognorm.DebugCallback {
+
+        private final ThreadLocal<List<String>> trace;
+
+        private TraceCallback(final ThreadLocal<List<String>> trace) {
+            this.trace = trace;
+        }
+
+        @Override
+        public void invoke(final Pointer cookie, final String msg, final int length) {
+            final List<String> messages = trace.get();
+            if (messages != null && messages.size() < MAX_TRACE_LINES) {
+                messages.add(msg);
+            }
+        }
+    }
+}
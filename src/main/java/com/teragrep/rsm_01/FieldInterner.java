@@ -0,0 +1,156 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Deduplicates the values of low-cardinality fields, such as host names, program names and severities, when the
+ * fields of a normalization result are materialized. Only the enabled fields are interned, each in a table of its own
+ * with a cardinality cap. Field names are always interned as the set of names is fixed by the rulebase.
+ */
+public final class FieldInterner {
+
+    private static final int NAME_CAP = 1024;
+
+    private final Map<String, InternTable> tables;
+    private final InternTable names;
+
+    /**
+     * Interner that interns only the field names.
+     */
+    public FieldInterner() {
+        this(Collections.emptySet(), 1);
+    }
+
+    /**
+     * Interner for the given fields.
+     *
+     * @param fields         Names of the fields whose values are interned.
+     * @param cardinalityCap Maximum number of distinct values kept per field.
+     */
+    public FieldInterner(final Set<String> fields, final int cardinalityCap) {
+        this(tables(fields, cardinalityCap), new InternTable(NAME_CAP));
+    }
+
+    public FieldInterner(final Map<String, InternTable> tables, final InternTable names) {
+        this.tables = tables;
+        this.names = names;
+    }
+
+    private static Map<String, InternTable> tables(final Set<String> fields, final int cardinalityCap) {
+        final Map<String, InternTable> byField = new HashMap<>();
+        for (final String field : fields) {
+            byField.put(field, new InternTable(cardinalityCap));
+        }
+        return Collections.unmodifiableMap(byField);
+    }
+
+    /**
+     * Return the canonical instance of the field name encoded in the first length bytes of the array.
+     *
+     * @param bytes  UTF-8 encoded field name, not retained.
+     * @param length Length of the name in bytes.
+     * @return string of the decoded name, shared with earlier results
+     */
+    String name(final byte[] bytes, final int length) {
+        return names.intern(bytes, length);
+    }
+
+    /**
+     * Return the value encoded in the first length bytes of the array. If interning is enabled for the field, the
+     * canonical instance is returned and the bytes are decoded only if the value is not yet in the table.
+     *
+     * @param field  Field name.
+     * @param bytes  UTF-8 encoded field value, not retained.
+     * @param length Length of the value in bytes.
+     * @return string of the decoded value, shared with earlier results if the field is enabled
+     */
+    String value(final String field, final byte[] bytes, final int length) {
+        final InternTable table = tables.get(field);
+        final String result;
+        if (table == null) {
+            result = new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+        else {
+            result = table.intern(bytes, length);
+        }
+        return result;
+    }
+
+    /**
+     * Return the intern table of an enabled field for inspecting its statistics.
+     *
+     * @param field Field name.
+     * @return intern table of the field
+     */
+    public InternTable table(final String field) {
+        final InternTable table = tables.get(field);
+        if (table == null) {
+            throw new IllegalArgumentException("Interning is not enabled for field <" + field + ">");
+        }
+        return table;
+    }
+
+    /**
+     * Return the share of lookups that found the value in the table, over all enabled fields.
+     *
+     * @return hit rate between 0 and 1, 0 if there has been no lookups
+     */
+    public double hitRate() {
+        long hits = 0;
+        long total = 0;
+        for (final InternTable table : tables.values()) {
+            hits += table.hits();
+            total += table.hits() + table.misses();
+        }
+        return total == 0 ? 0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, concurrent table of canonical values of a single field. Values are looked up by their UTF-8 bytes, so a
+ * value already in the table is returned without decoding it. When the table is full an entry is evicted with the
+ * clock policy: entries found since the clock hand last passed them are skipped, so frequent values stay in the table
+ * and a field with more distinct values than the cap keeps working with a lower hit rate.
+ */
+public final class InternTable {
+
+    private final int cardinalityCap;
+    private final ConcurrentMap<Key, Entry> values;
+    private final ThreadLocal<Key> probes;
+    private final Key[] clock;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    // guarded by clock
+    private int hand;
+
+    public InternTable(final int cardinalityCap) {
+        this(cardinalityCap, new ConcurrentHashMap<>(), new LongAdder(), new LongAdder(), new LongAdder());
+    }
+
+    InternTable(
+            final int cardinalityCap,
+            final ConcurrentMap<Key, Entry> values,
+            final LongAdder hits,
+            final LongAdder misses,
+            final LongAdder evictions
+    ) {
+        if (cardinalityCap < 1) {
+            throw new IllegalArgumentException("Cardinality cap must be at least 1, got " + cardinalityCap);
+        }
+        this.cardinalityCap = cardinalityCap;
+        this.values = values;
+        this.probes = ThreadLocal.withInitial(Key::new);
+        this.clock = new Key[cardinalityCap];
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.hand = 0;
+    }
+
+    /**
+     * Return the canonical instance of the value.
+     *
+     * @param value Field value.
+     * @return an equal string, shared with earlier results
+     */
+    public String intern(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return intern(bytes, bytes.length);
+    }
+
+    /**
+     * Return the canonical instance of the value encoded in the first length bytes of the array. The bytes are
+     * decoded only if the value is not in the table.
+     *
+     * @param bytes  UTF-8 encoded field value, not retained.
+     * @param length Length of the value in bytes.
+     * @return string of the decoded value, shared with earlier results
+     */
+    public String intern(final byte[] bytes, final int length) {
+        final Entry entry = values.get(probes.get().wrap(bytes, length));
+        final String canonical;
+        if (entry == null) {
+            misses.increment();
+            canonical = insert(new Key(Arrays.copyOf(bytes, length)));
+        }
+        else {
+            hits.increment();
+            entry.referenced = true;
+            canonical = entry.value;
+        }
+        return canonical;
+    }
+
+    private String insert(final Key key) {
+        synchronized (clock) {
+            Entry entry = values.get(key);
+            if (entry == null) {
+                if (values.size() >= cardinalityCap) {
+                    evict();
+                }
+                entry = new Entry(new String(key.bytes, 0, key.length, StandardCharsets.UTF_8));
+                values.put(key, entry);
+                clock[hand] = key;
+                hand = (hand + 1) % cardinalityCap;
+            }
+            return entry.value;
+        }
+    }
+
+    // leaves the hand at the slot of the evicted entry
+    private void evict() {
+        boolean evicted = false;
+        while (!evicted) {
+            final Entry entry = values.get(clock[hand]);
+            if (entry.referenced) {
+                entry.referenced = false;
+                hand = (hand + 1) % cardinalityCap;
+            }
+            else {
+                values.remove(clock[hand]);
+                evictions.increment();
+                evicted = true;
+            }
+        }
+    }
+
+    /**
+     * Return the number of distinct values currently in the table.
+     *
+     * @return table size
+     */
+    public int size() {
+        return values.size();
+    }
+
+    /**
+     * Return the number of values that were found in the table.
+     *
+     * @return hit count
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Return the number of values that were not found in the table.
+     *
+     * @return miss count
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Return the number of values evicted because the table was full.
+     *
+     * @return eviction count
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Return the share of lookups that found the value in the table.
+     *
+     * @return hit rate between 0 and 1, 0 if there has been no lookups
+     */
+    public double hitRate() {
+        final long hitCount = hits.sum();
+        final long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * UTF-8 bytes of a value. The probe instances are rewrapped for every lookup, the keys in the table never change.
+     */
+    static final class Key {
+
+        private byte[] bytes;
+        private int length;
+        private int hash;
+
+        private Key() {
+            this(new byte[0]);
+        }
+
+        private Key(final byte[] bytes) {
+            wrap(bytes, bytes.length);
+        }
+
+        private Key wrap(final byte[] source, final int size) {
+            int h = 1;
+            for (int i = 0; i < size; i++) {
+                h = 31 * h + source[i];
+            }
+            bytes = source;
+            length = size;
+            hash = h;
+            return this;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key that = (Key) o;
+            if (hash != that.hash || length != that.length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != that.bytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static final class Entry {
+
+        private final String value;
+        private volatile boolean referenced;
+
+        private Entry(final String value) {
+            this.value = value;
+            this.referenced = false;
+        }
+    }
+}
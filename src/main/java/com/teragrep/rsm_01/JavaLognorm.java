@@ -75,5 +75,18 @@ public interface JavaLognorm {
             return LibJavaLognorm.jnaInstance.version();
         }
 
+        /**
+         * Return a snapshot of the native memory used by all liblognorm contexts, results and result arenas of the
+         * process.
+         *
+         * @return native memory usage
+         */
+        public NativeMemoryUsage nativeMemoryUsage() {
+            final LibJavaLognorm.MemoryStatsStruct stats = new LibJavaLognorm.MemoryStatsStruct();
+            LibJavaLognorm.jnaInstance.memoryStats(stats);
+            stats.read();
+            return new NativeMemoryUsage(stats);
+        }
+
     }
 }
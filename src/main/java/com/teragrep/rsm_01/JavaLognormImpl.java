@@ -45,18 +45,60 @@
  */
 package com.teragrep.rsm_01;
 
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
 import com.sun.jna.Pointer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 public final class JavaLognormImpl implements JavaLognorm, AutoCloseable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JavaLognormImpl.class);
+    private static final int INITIAL_FIELDS = 32;
 
     private final Pointer ctx;
+    private final MessageSizeGuard guard;
+    private final Pointer fallbackCtx;
+    private final FieldInterner interner;
+    private final ResultHolderPool pool;
+    private final DebugSampler sampler;
+    private final SamplingRate failureLogs;
+    private final ThreadLocal<FieldBuffers> fieldBuffers;
 
     public JavaLognormImpl(Pointer ctx) {
+        this(ctx, Pointer.NULL, new ResultHolderPool(), new LognormSettings());
+    }
+
+    /**
+     * @param ctx         Pointer to the liblognorm context.
+     * @param fallbackCtx Pointer to the context for routed oversized messages, or Pointer.NULL.
+     * @param pool        Pool of the result holders.
+     * @param settings    Message size guard, interner, debug sampler and failure log rate limit to use. The debug
+     *                    callback of the sampler must be set to ctx.
+     */
+    public JavaLognormImpl(
+            final Pointer ctx,
+            final Pointer fallbackCtx,
+            final ResultHolderPool pool,
+            final LognormSettings settings
+    ) {
+        if (settings.guard().routes() && fallbackCtx == Pointer.NULL) {
+            throw new IllegalArgumentException(
+                    "fallbackCtx not initialized. Use LogNormFactory to initialize the ctx."
+            );
+        }
         this.ctx = ctx;
+        this.guard = settings.guard();
+        this.fallbackCtx = fallbackCtx;
+        this.interner = settings.interner();
+        this.pool = pool;
+        this.sampler = settings.sampler();
+        this.failureLogs = settings.failureLogs();
+        this.fieldBuffers = ThreadLocal.withInitial(() -> new FieldBuffers(INITIAL_FIELDS));
     }
 
     /**
@@ -67,6 +109,12 @@ public final class JavaLognormImpl implements JavaLognorm, AutoCloseable {
             throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
         }
 
+        if (fallbackCtx != Pointer.NULL) {
+            final int fallback = LibJavaLognorm.jnaInstance.exitCtx(fallbackCtx);
+            if (fallback != 0) {
+                LOGGER.error("ln_exitCtx() returned error code <{}> for the fallback ctx", fallback);
+            }
+        }
         int i = LibJavaLognorm.jnaInstance.exitCtx(ctx);
         if (i != 0) {
             LOGGER.error("ln_exitCtx() returned error code <{}>", i);
@@ -76,25 +124,203 @@ public final class JavaLognormImpl implements JavaLognorm, AutoCloseable {
 
     @Override
     public String normalize(String text) {
-        if (ctx != Pointer.NULL) {
-            LibJavaLognorm.NormalizedStruct norm = new LibJavaLognorm.NormalizedStruct();
-            LibJavaLognorm.NormalizedStruct result = LibJavaLognorm.jnaInstance.normalize(ctx, text, norm);
-            if (result.rv != 0) {
-                // error occurred
+        return liblognormReadResult(liblognormNormalize(text));
+    }
+
+    /**
+     * Normalize a message and materialize the top level fields of the result. Nested objects and arrays are returned
+     * as JSON strings. Field names, and the values of the fields enabled in the FieldInterner given to
+     * LognormFactory, are looked up by their bytes in the native result and shared between results instead of being
+     * decoded into fresh strings.
+     *
+     * @param text The message string to normalize
+     * @return field names mapped to their values, in the order liblognorm produced them
+     */
+    public Map<String, String> normalizeFields(final String text) {
+        final FieldBuffers buffers = fieldBuffers.get();
+        final Pointer jref = liblognormNormalize(text);
+        final Map<String, String> fields;
+        try {
+            final int count = buffers.read(jref);
+            fields = new LinkedHashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                final String name = interner.name(buffers.name(i), buffers.nameLength(i));
+                String value = null;
+                if (buffers.hasValue(i)) {
+                    value = interner.value(name, buffers.value(i), buffers.valueLength(i));
+                }
+                fields.put(name, value);
+            }
+        }
+        finally {
+            liblognormDestroyResult(jref);
+        }
+        return fields;
+    }
+
+    /**
+     * Normalizes the message in C, applying the message size guard.
+     *
+     * @param text The message string to normalize
+     * @return Pointer to the C-language json object holding the result, which must be released.
+     * @throws IllegalArgumentException if normalization fails.
+     */
+    private Pointer liblognormNormalize(final String text) {
+        if (ctx == Pointer.NULL) {
+            throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
+        }
+        final String line = guard.bounded(text);
+        final Pointer target = guard.routed(text) ? fallbackCtx : ctx;
+        LibJavaLognorm.NormalizedStruct norm = new LibJavaLognorm.NormalizedStruct();
+        LibJavaLognorm.NormalizedStruct result = LibJavaLognorm.jnaInstance.normalize(target, line, norm);
+        if (result.rv != 0) {
+            // error occurred
+            if (target == ctx && sampler.sample()) {
+                liblognormSampleDebug(line);
+            }
+            if (failureLogs.admit()) {
                 LOGGER
                         .error(
-                                "ln_normalize() failed to perform extraction with error code <{}>. Generated error information: <{}>",
-                                result.rv, liblognormReadResult(result.jref)
+                                "ln_normalize() failed to perform extraction with error code <{}>. Generated error"
+                                        + " information: <{}>. <{}> failures have not been logged since the previous"
+                                        + " failure log due to the rate limit",
+                                result.rv, liblognormReadResult(result.jref), failureLogs.takeRejected()
                         );
-                throw new IllegalArgumentException(
-                        "ln_normalize() failed to perform extraction with error code: " + result.rv
-                );
             }
-            return liblognormReadResult(result.jref);
+            else {
+                liblognormDestroyResult(result.jref);
+            }
+            throw new IllegalArgumentException(
+                    "ln_normalize() failed to perform extraction with error code: " + result.rv
+            );
+        }
+        return result.jref;
+    }
+
+    /**
+     * Normalize a message into a result arena. The result is serialized in C and the native json object is released
+     * right away, so a window of results can be released with a single ResultArena.reset() call. Failed
+     * normalizations do not throw, the return code is available through ResultArena.returnCode().
+     *
+     * @param text  The message string to normalize
+     * @param arena Arena to store the result into
+     * @return offset of the result in the arena, -1 if the arena is full and has to be reset before retrying
+     */
+    public int normalize(final String text, final ResultArena arena) {
+        if (ctx == Pointer.NULL) {
+            throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
+        }
+        final byte[] line = guard.bounded(text).getBytes(StandardCharsets.UTF_8);
+        final Pointer target = guard.routed(text) ? fallbackCtx : ctx;
+        return LibJavaLognorm.jnaInstance.normalizeToArena(target, line, line.length, arena.pointer());
+    }
+
+    /**
+     * Borrow a result holder to normalize into. The holder must be released with release() after use.
+     *
+     * @return result holder
+     */
+    public ResultHolder borrow() {
+        return pool.borrow();
+    }
+
+    /**
+     * Return a result holder borrowed with borrow().
+     *
+     * @param holder Holder to release.
+     */
+    public void release(final ResultHolder holder) {
+        pool.release(holder);
+    }
+
+    /**
+     * Return the pool of the result holders, for checking that all of them have been released.
+     *
+     * @return result holder pool
+     */
+    public ResultHolderPool holderPool() {
+        return pool;
+    }
+
+    /**
+     * Normalize a message into a result holder. Unlike normalize(String), a failed normalization does not throw, the
+     * outcome is reported by the holder.
+     *
+     * @param text   The message string to normalize
+     * @param holder Borrowed holder to store the result into, overwriting its previous contents.
+     */
+    public void normalize(final String text, final ResultHolder holder) {
+        if (ctx == Pointer.NULL) {
+            throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
+        }
+        if (!holder.borrowed()) {
+            throw new IllegalArgumentException("Result holder is not borrowed, it has already been released");
+        }
+        final String bounded = guard.bounded(text);
+        final Pointer target = guard.routed(text) ? fallbackCtx : ctx;
+        final int length = holder.encode(bounded);
+        final int offset = LibJavaLognormDirect
+                .normalizeRangeToGrowingArena(target, holder.input(), 0, length, holder.arena());
+        if (offset < 0) {
+            throw new IllegalStateException("Result of a message of " + length + " bytes does not fit into an arena");
+        }
+        holder.load(offset);
+        if (!holder.isSuccess() && target == ctx && sampler.sample()) {
+            liblognormSampleDebug(bounded);
+        }
+    }
+
+    /**
+     * Normalize a failed message again with debug output enabled for this call only, and record the debug trace with
+     * the DebugSampler.
+     *
+     * @param line The message string that failed to normalize
+     */
+    private void liblognormSampleDebug(final String line) {
+        sampler.startTrace();
+        LibJavaLognorm.jnaInstance.enableDebug(ctx, 1);
+        final LibJavaLognorm.NormalizedStruct result;
+        try {
+            result = LibJavaLognorm.jnaInstance.normalize(ctx, line, new LibJavaLognorm.NormalizedStruct());
+        }
+        finally {
+            LibJavaLognorm.jnaInstance.enableDebug(ctx, 0);
         }
-        else {
+        liblognormDestroyResult(result.jref);
+        sampler.record(line, result.rv);
+    }
+
+    /**
+     * Normalize a message that is already in native memory into a result arena, without allocating on the java heap.
+     *
+     * @param buffer Pointer to the start of the native buffer.
+     * @param offset Offset of the message in the buffer.
+     * @param length Length of the message in bytes.
+     * @param arena  Arena to store the result into
+     * @return offset of the result in the arena, -1 if the arena is full and has to be reset before retrying
+     */
+    int normalize(final Pointer buffer, final int offset, final int length, final ResultArena arena) {
+        if (ctx == Pointer.NULL) {
+            throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
+        }
+        final int bounded = guard.boundedLength(buffer, offset, length);
+        final Pointer target = guard.routed(length) ? fallbackCtx : ctx;
+        return LibJavaLognormDirect.normalizeRangeToArena(target, buffer, offset, bounded, arena.pointer());
+    }
+
+    /**
+     * Return the estimated native memory used by the rulebase of this context. liblognorm does not report the size of
+     * the parse DAG, so it is estimated from the process heap growth while the rulebase was loaded. The estimate is
+     * approximate: allocations and frees by other threads at the same time, including rulebases loaded in parallel,
+     * are included in it. Without glibc 2.33 or later the estimate is 0.
+     *
+     * @return estimated rulebase memory in bytes
+     */
+    public long rulebaseBytes() {
+        if (ctx == Pointer.NULL) {
             throw new IllegalArgumentException("ctx not initialized. Use LogNormFactory to initialize the ctx.");
         }
+        return LibJavaLognorm.jnaInstance.rulebaseBytes(ctx);
     }
 
     /**
@@ -130,6 +356,74 @@ public final class JavaLognormImpl implements JavaLognorm, AutoCloseable {
      */
     @Override
     public void close() throws IllegalArgumentException {
+        pool.close();
         liblognormExitCtx();
     }
+
+    /**
+     * Native arrays that readFields() fills and a scratch array the names and values are copied into, one set per
+     * thread. Grown when a result has more fields or a longer value than they can hold.
+     */
+    private static final class FieldBuffers {
+
+        private Memory names;
+        private Memory values;
+        private Memory nameLengths;
+        private Memory valueLengths;
+        private byte[] scratch;
+
+        private FieldBuffers(final int capacity) {
+            allocate(capacity);
+            this.scratch = new byte[256];
+        }
+
+        private void allocate(final int capacity) {
+            names = new Memory((long) capacity * Native.POINTER_SIZE);
+            values = new Memory((long) capacity * Native.POINTER_SIZE);
+            nameLengths = new Memory((long) capacity * Integer.BYTES);
+            valueLengths = new Memory((long) capacity * Integer.BYTES);
+        }
+
+        private int capacity() {
+            return (int) (names.size() / Native.POINTER_SIZE);
+        }
+
+        private int read(final Pointer jref) {
+            int count = LibJavaLognorm.jnaInstance
+                    .readFields(jref, names, values, nameLengths, valueLengths, capacity());
+            if (count > capacity()) {
+                allocate(count);
+                count = LibJavaLognorm.jnaInstance.readFields(jref, names, values, nameLengths, valueLengths, count);
+            }
+            return count;
+        }
+
+        private int nameLength(final int i) {
+            return nameLengths.getInt((long) i * Integer.BYTES);
+        }
+
+        private int valueLength(final int i) {
+            return valueLengths.getInt((long) i * Integer.BYTES);
+        }
+
+        private boolean hasValue(final int i) {
+            return values.getPointer((long) i * Native.POINTER_SIZE) != Pointer.NULL;
+        }
+
+        private byte[] name(final int i) {
+            return copy(names.getPointer((long) i * Native.POINTER_SIZE), nameLength(i));
+        }
+
+        private byte[] value(final int i) {
+            return copy(values.getPointer((long) i * Native.POINTER_SIZE), valueLength(i));
+        }
+
+        private byte[] copy(final Pointer pointer, final int length) {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            pointer.read(0, scratch, 0, length);
+            return scratch;
+        }
+    }
 }
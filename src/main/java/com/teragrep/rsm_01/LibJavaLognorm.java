@@ -104,6 +104,28 @@ public interface LibJavaLognorm extends Library {
         public Pointer jref;
     }
 
+    @FieldOrder({
+            "liveContexts",
+            "peakContexts",
+            "rulebaseBytes",
+            "peakRulebaseBytes",
+            "liveResults",
+            "peakResults",
+            "arenaBytes",
+            "peakArenaBytes"
+    })
+    public static class MemoryStatsStruct extends Structure {
+
+        public long liveContexts;
+        public long peakContexts;
+        public long rulebaseBytes;
+        public long peakRulebaseBytes;
+        public long liveResults;
+        public long peakResults;
+        public long arenaBytes;
+        public long peakArenaBytes;
+    }
+
     /**
      * Returns the version of the currently used library.
      *
@@ -181,6 +203,27 @@ public interface LibJavaLognorm extends Library {
      */
     public abstract String readResult(Pointer jref);
 
+    /**
+     * Reads the top level fields of the normalization result in C. The names and values point into the json object
+     * and are valid until the result is released. Nested objects and arrays are returned as json strings.
+     *
+     * @param jref         Pointer to a C-language json object.
+     * @param names        Native array of char pointers that is filled with the field names.
+     * @param values       Native array of char pointers that is filled with the field values.
+     * @param nameLengths  Native array of ints that is filled with the lengths of the field names in bytes.
+     * @param valueLengths Native array of ints that is filled with the lengths of the field values in bytes.
+     * @param max          Number of elements the arrays can hold.
+     * @return number of fields in the result, larger than max if the arrays were too small.
+     */
+    public abstract int readFields(
+            Pointer jref,
+            Pointer names,
+            Pointer values,
+            Pointer nameLengths,
+            Pointer valueLengths,
+            int max
+    );
+
     /**
      * Releases the results of the normalization from memory in C.
      *
@@ -197,6 +240,14 @@ public interface LibJavaLognorm extends Library {
      */
     public abstract int setDebugCB(Pointer ctx, DebugCallback func);
 
+    /**
+     * Turn liblognorm debug output on or off for the context. The debug callback must be set.
+     *
+     * @param ctx Pointer to the liblognorm context.
+     * @param i   1 to enable debug output, 0 to disable it.
+     */
+    public abstract void enableDebug(Pointer ctx, int i);
+
     /**
      * Set a callback for liblognorm error logging.
      *
@@ -213,4 +264,135 @@ public interface LibJavaLognorm extends Library {
      * @return 1 or 2, depending on rulebase version. 0 if no rulebase is present.
      */
     public abstract int rulebaseVersion(Pointer ctx);
+
+    /**
+     * Starts a native worker pool for batch normalization. Each worker thread normalizes with its own liblognorm
+     * context, so the contexts must not be used elsewhere while the pool is running. exitBatchPool() must be called on
+     * the produced pool when it is not needed anymore.
+     *
+     * @param ctxs    Pointers to the liblognorm contexts, one per worker.
+     * @param workers Number of worker threads to start.
+     * @return Pointer to the worker pool, null pointer if the pool could not be started.
+     */
+    public abstract Pointer initBatchPool(Pointer[] ctxs, int workers);
+
+    /**
+     * Stops the worker threads of the pool and releases the pool. The liblognorm contexts are not released.
+     *
+     * @param pool Pointer to the worker pool.
+     */
+    public abstract void exitBatchPool(Pointer pool);
+
+    /**
+     * Normalize a packed batch of messages in parallel using the native worker pool. The serialized results are
+     * appended into the result arena, which is grown if the batch does not fit into it.
+     *
+     * @param pool          Pointer to the worker pool.
+     * @param packed        Native memory holding the messages back to back.
+     * @param offsets       Offset of each message in the packed memory.
+     * @param lengths       Length of each message in bytes.
+     * @param count         Number of messages in the batch.
+     * @param arena         Pointer to the result arena.
+     * @param resultOffsets Output for the offset of each result record in the result arena.
+     * @return 0 on success, -1 if the results could not be stored.
+     */
+    public abstract int normalizeBatch(
+            Pointer pool,
+            Pointer packed,
+            int[] offsets,
+            int[] lengths,
+            int count,
+            Pointer arena,
+            int[] resultOffsets
+    );
+
+    /**
+     * Allocates a result arena of fixed capacity. exitArena() must be called on the produced arena when it is not
+     * needed anymore.
+     *
+     * @param capacity Capacity of the arena in bytes.
+     * @return Pointer to the result arena, null pointer if allocation failed.
+     */
+    public abstract Pointer initArena(int capacity);
+
+    /**
+     * Releases the result arena and all the results in it.
+     *
+     * @param arena Pointer to the result arena.
+     */
+    public abstract void exitArena(Pointer arena);
+
+    /**
+     * Discards all the results in the result arena so that the memory can be reused.
+     *
+     * @param arena Pointer to the result arena.
+     */
+    public abstract void resetArena(Pointer arena);
+
+    /**
+     * Return the memory holding the result records. The memory changes only when a batch grows the arena.
+     *
+     * @param arena Pointer to the result arena.
+     * @return Pointer to the start of the result records.
+     */
+    public abstract Pointer arenaData(Pointer arena);
+
+    /**
+     * Return the capacity of the result arena.
+     *
+     * @param arena Pointer to the result arena.
+     * @return Capacity of the arena in bytes.
+     */
+    public abstract int arenaCapacity(Pointer arena);
+
+    /**
+     * Return the number of bytes used by the results currently in the arena.
+     *
+     * @param arena Pointer to the result arena.
+     * @return Bytes used by the results currently in the arena.
+     */
+    public abstract int arenaUsed(Pointer arena);
+
+    /**
+     * Return the high-water mark of the result arena.
+     *
+     * @param arena Pointer to the result arena.
+     * @return Highest number of bytes used by the arena since it was allocated.
+     */
+    public abstract int arenaHighWater(Pointer arena);
+
+    /**
+     * Return the number of results that did not fit into the result arena.
+     *
+     * @param arena Pointer to the result arena.
+     * @return Number of results that did not fit into the arena.
+     */
+    public abstract long arenaOverflows(Pointer arena);
+
+    /**
+     * Normalize the given message and append the serialized result into the result arena. The json object created by
+     * liblognorm is released before returning.
+     *
+     * @param ctx    Pointer to the liblognorm context.
+     * @param line   The message bytes to normalize.
+     * @param length Length of the message in bytes.
+     * @param arena  Pointer to the result arena.
+     * @return offset of the result record in the arena, -1 if the arena is full.
+     */
+    public abstract int normalizeToArena(Pointer ctx, byte[] line, int length, Pointer arena);
+
+    /**
+     * Reads the native memory accounting of the library into the given struct.
+     *
+     * @param stats MemoryStatsStruct object that is filled with the current statistics.
+     */
+    public abstract void memoryStats(MemoryStatsStruct stats);
+
+    /**
+     * Return the estimated native memory used by the rulebase loaded into the liblognorm context.
+     *
+     * @param ctx Pointer to the liblognorm context.
+     * @return Heap growth in bytes measured while loading the rulebase.
+     */
+    public abstract long rulebaseBytes(Pointer ctx);
 }
@@ -0,0 +1,102 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * JNA direct mapping for the functions on per-message hot paths. Unlike the interface mapping of LibJavaLognorm, a
+ * direct call does not allocate an argument array or box primitive arguments.
+ */
+final class LibJavaLognormDirect {
+
+    static {
+        Native.register("JavaLognorm");
+    }
+
+    private LibJavaLognormDirect() {
+    }
+
+    /**
+     * Normalize a message in a native buffer and append the serialized result into the result arena.
+     *
+     * @param ctx    Pointer to the liblognorm context.
+     * @param buffer Pointer to the start of the native buffer.
+     * @param offset Offset of the message in the buffer.
+     * @param length Length of the message in bytes.
+     * @param arena  Pointer to the result arena.
+     * @return offset of the result record in the arena, -1 if the arena is full.
+     */
+    static native int normalizeRangeToArena(Pointer ctx, Pointer buffer, int offset, int length, Pointer arena);
+
+    /**
+     * Normalize a message in a native buffer and append the serialized result into the result arena, growing the
+     * arena if the result does not fit into it. The message is normalized only once.
+     *
+     * @param ctx    Pointer to the liblognorm context.
+     * @param buffer Pointer to the start of the native buffer.
+     * @param offset Offset of the message in the buffer.
+     * @param length Length of the message in bytes.
+     * @param arena  Pointer to the result arena.
+     * @return offset of the result record in the arena, -1 if the arena could not be grown.
+     */
+    static native int normalizeRangeToGrowingArena(
+            Pointer ctx,
+            Pointer buffer,
+            int offset,
+            int length,
+            Pointer arena
+    );
+
+    /**
+     * Return the capacity of the result arena, for detecting that it has been grown.
+     *
+     * @param arena Pointer to the result arena.
+     * @return capacity in bytes
+     */
+    static native int arenaCapacity(Pointer arena);
+}
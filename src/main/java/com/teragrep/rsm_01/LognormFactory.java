@@ -50,14 +50,35 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-public final class LognormFactory {
+public final class LognormFactory implements AutoCloseable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LognormFactory.class);
+    private static final int DEFAULT_ARENA_CAPACITY = 1024 * 1024;
+    // Roughly the invocation count after which HotSpot has compiled the normalize path with C2.
+    private static final int WARMUP_CALLS = 20000;
 
     private final LibJavaLognorm.OptionsStruct options;
     private final String samples;
     private final boolean fileUsed;
+    private final ContextCache cache;
+    private final String cacheKey;
+    private final LognormSettings settings;
 
     public LognormFactory(final String samples) {
         this(new LibJavaLognorm.OptionsStruct(), samples, false);
@@ -76,17 +97,310 @@ public final class LognormFactory {
     }
 
     public LognormFactory(final LibJavaLognorm.OptionsStruct options, final String samples, final boolean fileUsed) {
+        this(options, samples, fileUsed, new LognormSettings());
+    }
+
+    public LognormFactory(final String samples, final LognormSettings settings) {
+        this(new LibJavaLognorm.OptionsStruct(), samples, false, settings);
+    }
+
+    /**
+     * @param options  Options of the library contexts.
+     * @param samples  Rulebase, or the path of the rulebase file if fileUsed is true.
+     * @param fileUsed True if samples is the path of a rulebase file.
+     * @param settings Context cache, message size guard, interner, debug sampler and failure log rate limit of the
+     *                 normalizers.
+     */
+    public LognormFactory(
+            final LibJavaLognorm.OptionsStruct options,
+            final String samples,
+            final boolean fileUsed,
+            final LognormSettings settings
+    ) {
         this.options = options;
         this.samples = samples;
         this.fileUsed = fileUsed;
+        this.cache = settings.cache();
+        this.cacheKey = cacheKey(options, samples, fileUsed);
+        this.settings = settings;
     }
 
     /**
-     * Create a configured version of JavaLognormImpl.
+     * Create a configured version of JavaLognormImpl. A context prepared by prewarm() is used if one is available.
      *
      * @return Configured version of JavaLognormImpl.
      */
     public JavaLognormImpl lognorm() {
+        Pointer ctx = cache.take(cacheKey);
+        if (ctx == Pointer.NULL) {
+            ctx = configuredCtx();
+        }
+        Pointer fallbackCtx = Pointer.NULL;
+        try {
+            if (settings.sampler().enabled()) {
+                liblognormSetSampledDebugCB(ctx);
+            }
+            if (settings.guard().routes()) {
+                fallbackCtx = new LognormFactory(options, settings.guard().fallbackRulebase()).configuredCtx();
+            }
+            return new JavaLognormImpl(ctx, fallbackCtx, new ResultHolderPool(), settings);
+        }
+        catch (final RuntimeException e) {
+            // the contexts are not owned by a JavaLognormImpl yet
+            if (fallbackCtx != Pointer.NULL) {
+                LibJavaLognorm.jnaInstance.exitCtx(fallbackCtx);
+            }
+            LibJavaLognorm.jnaInstance.exitCtx(ctx);
+            throw e;
+        }
+    }
+
+    /**
+     * Build library contexts in parallel and store them in the context cache, so that following lognorm() and
+     * batchLognorm() calls do not have to parse the rulebase.
+     *
+     * @param contexts Number of contexts to prepare.
+     * @return Time it took until the contexts were ready.
+     */
+    public Duration prewarm(final int contexts) {
+        return prewarm(contexts, Collections.emptyList());
+    }
+
+    /**
+     * Build library contexts in parallel and store them in the context cache. The sample lines are normalized with
+     * the contexts before they are stored, so that the JIT has compiled the normalize path before real traffic
+     * arrives. The sample lines should be messages that the rulebase is able to normalize.
+     *
+     * @param contexts    Number of contexts to prepare.
+     * @param sampleLines Messages used to warm up the normalize path.
+     * @return Time it took until the contexts were ready.
+     */
+    public Duration prewarm(final int contexts, final List<String> sampleLines) {
+        final long start = System.nanoTime();
+        for (final Pointer ctx : parallelCtxs(contexts, sampleLines)) {
+            cache.put(cacheKey, ctx);
+        }
+        final long nanos = System.nanoTime() - start;
+        cache.timeToReady(nanos);
+        LOGGER.info("Prepared <{}> contexts in <{}> ms", contexts, nanos / 1000000);
+        return Duration.ofNanos(nanos);
+    }
+
+    /**
+     * Return the context cache of this factory, for reading its metrics.
+     *
+     * @return context cache
+     */
+    public ContextCache contextCache() {
+        return cache;
+    }
+
+    /**
+     * Discards the prewarmed contexts that were never taken from the context cache. Closing the factory also closes a
+     * cache that is shared with other factories.
+     */
+    @Override
+    public void close() {
+        cache.close();
+    }
+
+    /**
+     * Create a configured version of BatchLognormImpl with one native worker per available processor.
+     *
+     * @return Configured version of BatchLognormImpl.
+     */
+    public BatchLognormImpl batchLognorm() {
+        return batchLognorm(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a configured version of BatchLognormImpl. Every native worker gets a library context of its own.
+     *
+     * @param workers Number of native worker threads.
+     * @return Configured version of BatchLognormImpl.
+     */
+    public BatchLognormImpl batchLognorm(final int workers) {
+        return batchLognorm(workers, DEFAULT_ARENA_CAPACITY);
+    }
+
+    /**
+     * Create a configured version of BatchLognormImpl. Every native worker gets a library context of its own.
+     *
+     * @param workers       Number of native worker threads.
+     * @param arenaCapacity Initial capacity in bytes of the arena the results of a batch are stored into.
+     * @return Configured version of BatchLognormImpl.
+     */
+    public BatchLognormImpl batchLognorm(final int workers, final int arenaCapacity) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Batch normalization requires at least one worker, got " + workers);
+        }
+        final List<Pointer> ctxs = new ArrayList<>(workers);
+        Pointer cached = cache.take(cacheKey);
+        while (cached != Pointer.NULL && ctxs.size() < workers) {
+            ctxs.add(cached);
+            if (ctxs.size() < workers) {
+                cached = cache.take(cacheKey);
+            }
+        }
+        if (ctxs.size() < workers) {
+            try {
+                ctxs.addAll(parallelCtxs(workers - ctxs.size(), Collections.emptyList()));
+            }
+            catch (final RuntimeException e) {
+                // contexts taken from the cache are still usable, return them
+                for (final Pointer ctx : ctxs) {
+                    cache.put(cacheKey, ctx);
+                }
+                throw e;
+            }
+        }
+        final ResultArena arena = new ResultArena(arenaCapacity);
+        final Pointer pool = LibJavaLognorm.jnaInstance.initBatchPool(ctxs.toArray(new Pointer[0]), workers);
+        if (pool == Pointer.NULL) {
+            arena.close();
+            for (final Pointer ctx : ctxs) {
+                LibJavaLognorm.jnaInstance.exitCtx(ctx);
+            }
+            throw new NullPointerException(
+                    "initBatchPool() returned a null pointer, failed to start the native worker pool."
+            );
+        }
+        return new BatchLognormImpl(pool, ctxs, arena);
+    }
+
+    /**
+     * Build library contexts in parallel, one thread per available processor at most.
+     *
+     * @param count       Number of contexts to build.
+     * @param sampleLines Messages normalized with each context to warm up the normalize path.
+     * @return Pointers to the liblognorm contexts.
+     */
+    private List<Pointer> parallelCtxs(final int count, final List<String> sampleLines) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one context must be built, got " + count);
+        }
+        final ExecutorService executor = Executors
+                .newFixedThreadPool(Math.min(count, Runtime.getRuntime().availableProcessors()));
+        final List<Future<Pointer>> futures = new ArrayList<>(count);
+        final int warmupCalls = sampleLines.isEmpty() ? 0 : Math.max(sampleLines.size(), WARMUP_CALLS / count);
+        for (int i = 0; i < count; i++) {
+            futures.add(executor.submit(() -> warmedCtx(sampleLines, warmupCalls)));
+        }
+        executor.shutdown();
+
+        final List<Pointer> ctxs = new ArrayList<>(count);
+        RuntimeException failure = null;
+        for (final Future<Pointer> future : futures) {
+            try {
+                ctxs.add(future.get());
+            }
+            catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    failure = (RuntimeException) e.getCause();
+                }
+                else {
+                    failure = new IllegalStateException("Building a context failed", e.getCause());
+                }
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new IllegalStateException("Interrupted while building contexts", e);
+            }
+        }
+        if (failure != null) {
+            for (final Pointer ctx : ctxs) {
+                LibJavaLognorm.jnaInstance.exitCtx(ctx);
+            }
+            throw failure;
+        }
+        return ctxs;
+    }
+
+    /**
+     * Initialize a library context and run the sample lines through the native normalize calls. No JavaLognormImpl is
+     * created, so the guard and the sampler of the factory do not see the warmup messages.
+     *
+     * @param sampleLines Messages to normalize.
+     * @param calls       Number of normalize calls to make.
+     * @return Pointer to the liblognorm context.
+     */
+    private Pointer warmedCtx(final List<String> sampleLines, final int calls) {
+        final Pointer ctx = configuredCtx();
+        final LibJavaLognorm.NormalizedStruct norm = new LibJavaLognorm.NormalizedStruct();
+        int failed = 0;
+        try {
+            for (int i = 0; i < calls; i++) {
+                final LibJavaLognorm.NormalizedStruct result = LibJavaLognorm.jnaInstance
+                        .normalize(ctx, sampleLines.get(i % sampleLines.size()), norm);
+                if (result.rv != 0) {
+                    failed++;
+                }
+                // read like in JavaLognormImpl.normalize(), so that the same calls are compiled
+                LibJavaLognorm.jnaInstance.readResult(result.jref);
+                LibJavaLognorm.jnaInstance.destroyResult(result.jref);
+            }
+        }
+        catch (final RuntimeException e) {
+            LibJavaLognorm.jnaInstance.exitCtx(ctx);
+            throw e;
+        }
+        if (failed != 0) {
+            LOGGER
+                    .warn(
+                            "<{}> of <{}> warmup normalizations failed, use sample lines that the rulebase matches",
+                            failed, calls
+                    );
+        }
+        return ctx;
+    }
+
+    /**
+     * Return the key of the contexts built by this factory in the context cache. The key is a hash of the rulebase
+     * content, the rulebase file name and the context options. It is computed once when the factory is created, so the
+     * rulebase file is not read again for every lognorm() call.
+     *
+     * @return Hex encoded SHA-256 hash.
+     */
+    private static String cacheKey(
+            final LibJavaLognorm.OptionsStruct options,
+            final String samples,
+            final boolean fileUsed
+    ) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        if (fileUsed) {
+            digest.update(samples.getBytes(StandardCharsets.UTF_8));
+            try {
+                digest.update(Files.readAllBytes(Paths.get(samples)));
+            }
+            catch (final IOException e) {
+                // No context can be built from an unreadable file, ln_loadSamples() reports the actual error.
+                LOGGER.debug("Rulebase file <{}> is not readable, using its name as the cache key", samples, e);
+            }
+        }
+        else {
+            digest.update(samples.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update(new byte[] {
+                (byte) (fileUsed ? 1 : 0),
+                (byte) (options.CTXOPT_ADD_ORIGINALMSG ? 1 : 0),
+                (byte) (options.CTXOPT_ADD_RULE ? 1 : 0),
+                (byte) (options.CTXOPT_ADD_RULE_LOCATION ? 1 : 0)
+        });
+        return String.format("%064x", new BigInteger(1, digest.digest()));
+    }
+
+    /**
+     * Initialize a library context with the configured options and rulebase.
+     *
+     * @return Pointer to the liblognorm context.
+     */
+    private Pointer configuredCtx() {
         final Pointer ctx = LibJavaLognorm.jnaInstance.initCtx();
         // Do java exception handling that can't be done in C.
         if (ctx == Pointer.NULL) {
@@ -109,7 +423,7 @@ public final class LognormFactory {
         else {
             liblognormLoadSamplesFromString(ctx, samples);
         }
-        return new JavaLognormImpl(ctx);
+        return ctx;
     }
 
     /**
@@ -158,6 +472,21 @@ public final class LognormFactory {
         }
     }
 
+    /**
+     * Set the callback of the debug sampler for liblognorm debug messages, with debug output disabled until a message
+     * is sampled.
+     *
+     * @param ctx Pointer to the liblognorm context.
+     */
+    private void liblognormSetSampledDebugCB(Pointer ctx) {
+        int i = LibJavaLognorm.jnaInstance.setDebugCB(ctx, settings.sampler().callback());
+        if (i != 0) {
+            LOGGER.error("ln_setDebugCB() returned error code <{}>", i);
+            throw new IllegalArgumentException("ln_setDebugCB() returned " + i + " instead of 0");
+        }
+        LibJavaLognorm.jnaInstance.enableDebug(ctx, 0);
+    }
+
     /**
      * Set a callback for liblognorm error message logging.
      *
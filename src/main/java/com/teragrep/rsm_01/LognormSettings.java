@@ -0,0 +1,136 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+/**
+ * Optional parts of a LognormFactory and the normalizers it creates, each with a default that leaves the feature
+ * disabled. Immutable, the with methods return a copy with one part replaced:
+ *
+ * <pre>
+ * new LognormSettings().withGuard(new MessageSizeGuard(64 * 1024, OversizePolicy.TRUNCATE))
+ * </pre>
+ */
+public final class LognormSettings {
+
+    private static final int FAILURE_LOGS_PER_SECOND = 10;
+    // the rate limit of failure logs is global, shared by every normalizer using the default
+    private static final SamplingRate FAILURE_LOGS = new SamplingRate(SamplingMode.PER_SECOND, FAILURE_LOGS_PER_SECOND);
+
+    private final ContextCache cache;
+    private final MessageSizeGuard guard;
+    private final FieldInterner interner;
+    private final DebugSampler sampler;
+    private final SamplingRate failureLogs;
+
+    /**
+     * Settings with a context cache of its own, no message size limit, interning of field names only, debug sampling
+     * disabled and failed normalizations logged at most 10 times per second across all normalizers.
+     */
+    public LognormSettings() {
+        this(new ContextCache(), new MessageSizeGuard(), new FieldInterner(), new DebugSampler(), FAILURE_LOGS);
+    }
+
+    /**
+     * @param cache       Cache of prewarmed library contexts, may be shared between factories.
+     * @param guard       Guard for oversized messages.
+     * @param interner    Interner for the field names and values of normalizeFields().
+     * @param sampler     Sampler capturing debug traces of failed messages.
+     * @param failureLogs Rate limit of logging failed normalizations.
+     */
+    public LognormSettings(
+            final ContextCache cache,
+            final MessageSizeGuard guard,
+            final FieldInterner interner,
+            final DebugSampler sampler,
+            final SamplingRate failureLogs
+    ) {
+        this.cache = cache;
+        this.guard = guard;
+        this.interner = interner;
+        this.sampler = sampler;
+        this.failureLogs = failureLogs;
+    }
+
+    public LognormSettings withCache(final ContextCache newCache) {
+        return new LognormSettings(newCache, guard, interner, sampler, failureLogs);
+    }
+
+    public LognormSettings withGuard(final MessageSizeGuard newGuard) {
+        return new LognormSettings(cache, newGuard, interner, sampler, failureLogs);
+    }
+
+    public LognormSettings withInterner(final FieldInterner newInterner) {
+        return new LognormSettings(cache, guard, newInterner, sampler, failureLogs);
+    }
+
+    public LognormSettings withSampler(final DebugSampler newSampler) {
+        return new LognormSettings(cache, guard, interner, newSampler, failureLogs);
+    }
+
+    public LognormSettings withFailureLogs(final SamplingRate newFailureLogs) {
+        return new LognormSettings(cache, guard, interner, sampler, newFailureLogs);
+    }
+
+    ContextCache cache() {
+        return cache;
+    }
+
+    MessageSizeGuard guard() {
+        return guard;
+    }
+
+    FieldInterner interner() {
+        return interner;
+    }
+
+    DebugSampler sampler() {
+        return sampler;
+    }
+
+    SamplingRate failureLogs() {
+        return failureLogs;
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Pointer;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the work done for a single message. Messages longer than the maximum length are truncated, rejected or routed
+ * to a fallback rulebase before they are converted for the native call. Routed messages are capped to the maximum
+ * length as well, so every policy bounds the work done by liblognorm. The length is measured in UTF-8 bytes for both
+ * strings and messages already in native memory, and truncation never splits a multibyte character. One guard is
+ * shared by all the contexts of a LognormFactory, so the counters cover all of them.
+ */
+public final class MessageSizeGuard {
+
+    private final int maxLength;
+    private final OversizePolicy policy;
+    private final String fallbackRulebase;
+    private final LongAdder truncated;
+    private final LongAdder rejected;
+    private final LongAdder routed;
+
+    /**
+     * Guard that accepts messages of any length.
+     */
+    public MessageSizeGuard() {
+        this(Integer.MAX_VALUE, OversizePolicy.REJECT);
+    }
+
+    public MessageSizeGuard(final int maxLength, final OversizePolicy policy) {
+        this(maxLength, policy, "");
+    }
+
+    /**
+     * Guard that routes oversized messages to the fallback rulebase.
+     *
+     * @param maxLength        Maximum message length in UTF-8 bytes.
+     * @param fallbackRulebase Rulebase string used for the oversized messages, for example "rule=:%all:rest%".
+     */
+    public MessageSizeGuard(final int maxLength, final String fallbackRulebase) {
+        this(maxLength, OversizePolicy.ROUTE, fallbackRulebase);
+    }
+
+    public MessageSizeGuard(final int maxLength, final OversizePolicy policy, final String fallbackRulebase) {
+        this(maxLength, policy, fallbackRulebase, new LongAdder(), new LongAdder(), new LongAdder());
+    }
+
+    public MessageSizeGuard(
+            final int maxLength,
+            final OversizePolicy policy,
+            final String fallbackRulebase,
+            final LongAdder truncated,
+            final LongAdder rejected,
+            final LongAdder routed
+    ) {
+        if (maxLength < 1) {
+            throw new IllegalArgumentException("Maximum message length must be at least 1, got " + maxLength);
+        }
+        if (policy == OversizePolicy.ROUTE && fallbackRulebase.isEmpty()) {
+            throw new IllegalArgumentException("Routing oversized messages requires a fallback rulebase");
+        }
+        this.maxLength = maxLength;
+        this.policy = policy;
+        this.fallbackRulebase = fallbackRulebase;
+        this.truncated = truncated;
+        this.rejected = rejected;
+        this.routed = routed;
+    }
+
+    /**
+     * Return the message to pass to liblognorm, truncating it or throwing if it is oversized.
+     *
+     * @param text The message string to normalize
+     * @return the message, or the message truncated to the maximum length if it is truncated or routed
+     * @throws IllegalArgumentException if the message is oversized and the policy is REJECT.
+     */
+    String bounded(final String text) {
+        String line = text;
+        final int end = fittingChars(text);
+        if (end < text.length()) {
+            if (policy == OversizePolicy.TRUNCATE || policy == OversizePolicy.ROUTE) {
+                // routed messages are capped as well so that the fallback rulebase does bounded work
+                if (policy == OversizePolicy.TRUNCATE) {
+                    truncated.increment();
+                }
+                line = text.substring(0, end);
+            }
+            else if (policy == OversizePolicy.REJECT) {
+                rejected.increment();
+                // the message is not measured past the maximum length, so that rejecting it stays cheap
+                throw new IllegalArgumentException("Message exceeds the maximum length of " + maxLength + " bytes");
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Return true if the message must be normalized with the fallback rulebase.
+     *
+     * @param text The message string to normalize
+     * @return true if the message is routed
+     */
+    boolean routed(final String text) {
+        final boolean route = policy == OversizePolicy.ROUTE && fittingChars(text) < text.length();
+        if (route) {
+            routed.increment();
+        }
+        return route;
+    }
+
+    /**
+     * Return the number of characters at the start of the message whose UTF-8 encoding fits in the maximum length.
+     * Surrogate pairs are kept together. Messages that cannot be oversized are not scanned: a UTF-16 character is
+     * encoded as one to three bytes, and a surrogate pair as four.
+     *
+     * @param text The message string to normalize
+     * @return the number of characters that fit, the length of the message if it is not oversized
+     */
+    private int fittingChars(final String text) {
+        final int chars = text.length();
+        if ((long) chars * 3 <= maxLength) {
+            return chars;
+        }
+        int bytes = 0;
+        int i = 0;
+        while (i < chars) {
+            final char c = text.charAt(i);
+            int width = 3;
+            int step = 1;
+            if (c < 0x80) {
+                width = 1;
+            }
+            else if (c < 0x800) {
+                width = 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(text.charAt(i + 1))) {
+                width = 4;
+                step = 2;
+            }
+            if (bytes + width > maxLength) {
+                break;
+            }
+            bytes += width;
+            i += step;
+        }
+        return i;
+    }
+
+    /**
+     * Return the number of bytes to pass to liblognorm for a message that is already in native memory. A truncated
+     * message is cut before the UTF-8 sequence that crosses the maximum length, so no character is split in half.
+     *
+     * @param buffer Pointer to the start of the native buffer.
+     * @param offset Offset of the message in the buffer.
+     * @param length Message length in bytes.
+     * @return the length, or the length that fits in the maximum length if the message is truncated or routed
+     * @throws IllegalArgumentException if the message is oversized and the policy is REJECT.
+     */
+    int boundedLength(final Pointer buffer, final int offset, final int length) {
+        int bounded = length;
+        if (length > maxLength) {
+            if (policy == OversizePolicy.TRUNCATE || policy == OversizePolicy.ROUTE) {
+                if (policy == OversizePolicy.TRUNCATE) {
+                    truncated.increment();
+                }
+                bounded = maxLength;
+                // the first excluded byte must not be a continuation byte 10xxxxxx
+                while (bounded > 0 && (buffer.getByte(offset + bounded) & 0xC0) == 0x80) {
+                    bounded--;
+                }
+            }
+            else if (policy == OversizePolicy.REJECT) {
+                rejected.increment();
+                throw new IllegalArgumentException(
+                        "Message of " + length + " bytes exceeds the maximum length of " + maxLength
+                );
+            }
+        }
+        return bounded;
+    }
+
+    /**
+     * Return true if a message of the given length in bytes must be normalized with the fallback rulebase.
+     *
+     * @param length Message length in bytes.
+     * @return true if the message is routed
+     */
+    boolean routed(final int length) {
+        final boolean route = policy == OversizePolicy.ROUTE && length > maxLength;
+        if (route) {
+            routed.increment();
+        }
+        return route;
+    }
+
+    /**
+     * Return true if contexts using this guard need a fallback context.
+     *
+     * @return true if the policy is ROUTE
+     */
+    boolean routes() {
+        return policy == OversizePolicy.ROUTE;
+    }
+
+    /**
+     * Return the rulebase for the fallback context.
+     *
+     * @return rulebase string
+     */
+    String fallbackRulebase() {
+        return fallbackRulebase;
+    }
+
+    /**
+     * Return the number of messages that were truncated.
+     *
+     * @return truncated message count
+     */
+    public long truncatedCount() {
+        return truncated.sum();
+    }
+
+    /**
+     * Return the number of messages that were rejected without a native call.
+     *
+     * @return rejected message count
+     */
+    public long rejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Return the number of messages that were normalized with the fallback rulebase.
+     *
+     * @return routed message count
+     */
+    public long routedCount() {
+        return routed.sum();
+    }
+}
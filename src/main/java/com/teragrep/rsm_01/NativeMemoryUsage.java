@@ -0,0 +1,140 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+/**
+ * Snapshot of the native memory accounting done in C. Rulebase sizes are estimates, liblognorm does not report the
+ * size of its parse DAG so it is measured as the heap growth during loading. Memory allocated by JNA on the java side
+ * is not included.
+ */
+public final class NativeMemoryUsage {
+
+    private final LibJavaLognorm.MemoryStatsStruct stats;
+
+    public NativeMemoryUsage(final LibJavaLognorm.MemoryStatsStruct stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Return the number of liblognorm contexts that have not been closed.
+     *
+     * @return number of liblognorm contexts that have not been closed
+     */
+    public long liveContexts() {
+        return stats.liveContexts;
+    }
+
+    /**
+     * Return the highest number of liblognorm contexts alive at the same time.
+     *
+     * @return highest number of liblognorm contexts alive at the same time
+     */
+    public long peakContexts() {
+        return stats.peakContexts;
+    }
+
+    /**
+     * Return the estimated bytes used by the rulebases of the contexts that have not been closed.
+     *
+     * @return estimated bytes used by the rulebases of the contexts that have not been closed
+     */
+    public long rulebaseBytes() {
+        return stats.rulebaseBytes;
+    }
+
+    /**
+     * Return the highest estimated rulebase memory in bytes.
+     *
+     * @return highest estimated rulebase memory in bytes
+     */
+    public long peakRulebaseBytes() {
+        return stats.peakRulebaseBytes;
+    }
+
+    /**
+     * Return the number of normalization results that have not been released.
+     *
+     * @return number of normalization results that have not been released, nonzero when idle indicates a leak
+     */
+    public long liveResults() {
+        return stats.liveResults;
+    }
+
+    /**
+     * Return the highest number of unreleased normalization results.
+     *
+     * @return highest number of unreleased normalization results
+     */
+    public long peakResults() {
+        return stats.peakResults;
+    }
+
+    /**
+     * Return the bytes allocated by the result arenas that have not been closed.
+     *
+     * @return bytes allocated by the result arenas that have not been closed
+     */
+    public long arenaBytes() {
+        return stats.arenaBytes;
+    }
+
+    /**
+     * Return the highest number of bytes allocated by result arenas.
+     *
+     * @return highest number of bytes allocated by result arenas
+     */
+    public long peakArenaBytes() {
+        return stats.peakArenaBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "NativeMemoryUsage{" + "liveContexts=" + stats.liveContexts + ", peakContexts=" + stats.peakContexts
+                + ", rulebaseBytes=" + stats.rulebaseBytes + ", peakRulebaseBytes=" + stats.peakRulebaseBytes
+                + ", liveResults=" + stats.liveResults + ", peakResults=" + stats.peakResults + ", arenaBytes="
+                + stats.arenaBytes + ", peakArenaBytes=" + stats.peakArenaBytes + '}';
+    }
+}
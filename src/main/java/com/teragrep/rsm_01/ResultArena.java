@@ -0,0 +1,208 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Pointer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Native memory region holding the serialized normalization results of a window of messages. Results are read by the
+ * offset returned when they were added and all of them are released at once with reset(), after which the memory is
+ * reused for the next window. Using an arena after it has been closed throws IllegalStateException. Not thread-safe,
+ * each thread should use an arena of its own.
+ */
+public final class ResultArena implements AutoCloseable {
+
+    private static final int RV_OFFSET = 0;
+    private static final int LENGTH_OFFSET = 4;
+    private static final int JSON_OFFSET = 8;
+
+    private final Pointer arena;
+    private final AtomicBoolean closed;
+    private Pointer data;
+
+    public ResultArena(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Arena capacity must be at least 1 byte, got " + capacity);
+        }
+        this.arena = LibJavaLognorm.jnaInstance.initArena(capacity);
+        if (arena == Pointer.NULL) {
+            throw new NullPointerException(
+                    "initArena() returned a null pointer, failed to allocate " + capacity + " bytes."
+            );
+        }
+        this.closed = new AtomicBoolean(false);
+        this.data = LibJavaLognorm.jnaInstance.arenaData(arena);
+    }
+
+    /**
+     * Pointer to the native arena, used by the normalizers to append results.
+     *
+     * @return Pointer to the result arena.
+     */
+    Pointer pointer() {
+        checkOpen();
+        return arena;
+    }
+
+    /**
+     * Re-reads the location of the result records after the arena may have been grown by a batch.
+     */
+    void refresh() {
+        checkOpen();
+        data = LibJavaLognorm.jnaInstance.arenaData(arena);
+    }
+
+    /**
+     * Return the value returned by ln_normalize() for the result.
+     *
+     * @param offset Offset of the result in the arena.
+     * @return 0 on success, liblognorm error code otherwise
+     */
+    public int returnCode(final int offset) {
+        checkOpen();
+        return data.getInt(offset + RV_OFFSET);
+    }
+
+    /**
+     * Return the length of the serialized result.
+     *
+     * @param offset Offset of the result in the arena.
+     * @return length of the JSON string in bytes
+     */
+    public int length(final int offset) {
+        checkOpen();
+        return data.getInt(offset + LENGTH_OFFSET);
+    }
+
+    /**
+     * Copies the serialized result into the given array without allocating.
+     *
+     * @param offset      Offset of the result in the arena.
+     * @param destination Array to copy the UTF-8 encoded JSON into, must hold at least length(offset) bytes.
+     */
+    public void read(final int offset, final byte[] destination) {
+        checkOpen();
+        data.read(offset + JSON_OFFSET, destination, 0, length(offset));
+    }
+
+    /**
+     * Return the serialized result.
+     *
+     * @param offset Offset of the result in the arena.
+     * @return normalized message as a JSON string object
+     */
+    public String json(final int offset) {
+        checkOpen();
+        return new String(data.getByteArray(offset + JSON_OFFSET, length(offset)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Discards all the results in the arena. Offsets returned before the reset are no longer valid.
+     */
+    public void reset() {
+        checkOpen();
+        LibJavaLognorm.jnaInstance.resetArena(arena);
+    }
+
+    /**
+     * Return the capacity of the arena.
+     *
+     * @return capacity of the arena in bytes
+     */
+    public int capacity() {
+        checkOpen();
+        return LibJavaLognorm.jnaInstance.arenaCapacity(arena);
+    }
+
+    /**
+     * Return the number of bytes used by the results currently in the arena.
+     *
+     * @return bytes used by the results currently in the arena
+     */
+    public int used() {
+        checkOpen();
+        return LibJavaLognorm.jnaInstance.arenaUsed(arena);
+    }
+
+    /**
+     * Return the highest number of bytes the arena has held at once, which can be used to size the arena.
+     *
+     * @return high-water mark in bytes
+     */
+    public int highWaterMark() {
+        checkOpen();
+        return LibJavaLognorm.jnaInstance.arenaHighWater(arena);
+    }
+
+    /**
+     * Return the number of results that did not fit into the arena and had to be retried in a new window.
+     *
+     * @return number of results that did not fit into the arena
+     */
+    public long overflows() {
+        checkOpen();
+        return LibJavaLognorm.jnaInstance.arenaOverflows(arena);
+    }
+
+    private void checkOpen() {
+        if (closed.get()) {
+            throw new IllegalStateException("Result arena is closed");
+        }
+    }
+
+    /**
+     * Releases the native memory of the arena. Closing an arena that is already closed does nothing.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            LibJavaLognorm.jnaInstance.exitArena(arena);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mutable holder of a normalization result, borrowed from and released back to a ResultHolderPool. The holder owns
+ * the native buffers the message and the result are passed through and the heap buffers the result is read into, so
+ * normalizing into a holder that has been used before only allocates a small wrapper for the message as long as the
+ * buffers are large enough.
+ * The contents are valid until the holder is used again or released. Not thread-safe.
+ */
+public final class ResultHolder {
+
+    private static final int INITIAL_INPUT_CAPACITY = 1024;
+    private static final int INITIAL_ARENA_CAPACITY = 4096;
+    // a char encodes into at most three bytes of UTF-8, surrogate pairs into four bytes for two chars
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    private final CharsetEncoder encoder;
+    private final CharsetDecoder decoder;
+    private Memory input;
+    private ByteBuffer inputBuffer;
+    private final ResultArena arena;
+    private int arenaCapacity;
+    private byte[] bytes;
+    private ByteBuffer byteBuffer;
+    private char[] chars;
+    private CharBuffer charBuffer;
+    private int rv;
+    private int length;
+    private int charLength;
+    private boolean borrowed;
+
+    ResultHolder() {
+        this.encoder = StandardCharsets.UTF_8
+                .newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.decoder = StandardCharsets.UTF_8
+                .newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.input = new Memory(INITIAL_INPUT_CAPACITY);
+        this.inputBuffer = input.getByteBuffer(0, INITIAL_INPUT_CAPACITY);
+        this.arena = new ResultArena(INITIAL_ARENA_CAPACITY);
+        this.arenaCapacity = INITIAL_ARENA_CAPACITY;
+        this.bytes = new byte[INITIAL_ARENA_CAPACITY];
+        this.byteBuffer = ByteBuffer.wrap(bytes);
+        this.chars = new char[INITIAL_ARENA_CAPACITY];
+        this.charBuffer = CharBuffer.wrap(chars);
+        this.rv = 0;
+        this.length = 0;
+        this.charLength = -1;
+        this.borrowed = false;
+    }
+
+    /**
+     * Return true if ln_normalize() succeeded for the message.
+     *
+     * @return true if the message was normalized, false if not
+     */
+    public boolean isSuccess() {
+        return rv == 0;
+    }
+
+    /**
+     * Return the value returned by ln_normalize() for the message.
+     *
+     * @return 0 on success, liblognorm error code otherwise
+     */
+    public int returnCode() {
+        return rv;
+    }
+
+    /**
+     * Return the length of the UTF-8 encoded result in bytes().
+     *
+     * @return length of the result in bytes
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Return the buffer holding the UTF-8 encoded JSON result in its first length() bytes. The buffer is reused.
+     *
+     * @return buffer holding the result
+     */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * Return the length of the decoded result in chars().
+     *
+     * @return length of the result in chars
+     */
+    public int charLength() {
+        decode();
+        return charLength;
+    }
+
+    /**
+     * Return the buffer holding the JSON result decoded in its first charLength() chars. The buffer is reused.
+     *
+     * @return buffer holding the result
+     */
+    public char[] chars() {
+        decode();
+        return chars;
+    }
+
+    /**
+     * Return the result as a new string, for when the result has to outlive the holder.
+     *
+     * @return normalized message as a JSON string object
+     */
+    public String json() {
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes the message into the native input buffer.
+     *
+     * @param text Message to encode.
+     * @return length of the encoded message in bytes
+     */
+    int encode(final String text) {
+        final long required = (long) text.length() * MAX_BYTES_PER_CHAR;
+        if (required > input.size()) {
+            if (required > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Message of " + text.length() + " characters is too large");
+            }
+            input = new Memory(Math.max(required, input.size() * 2));
+            inputBuffer = input.getByteBuffer(0, input.size());
+        }
+        inputBuffer.clear();
+        encoder.reset();
+        encoder.encode(CharBuffer.wrap(text), inputBuffer, true);
+        encoder.flush(inputBuffer);
+        return inputBuffer.position();
+    }
+
+    Pointer input() {
+        return input;
+    }
+
+    Pointer arena() {
+        return arena.pointer();
+    }
+
+    /**
+     * Copies the result out of the arena and makes the arena ready for the next message.
+     *
+     * @param offset Offset of the result in the arena.
+     */
+    void load(final int offset) {
+        final int capacity = LibJavaLognormDirect.arenaCapacity(arena.pointer());
+        if (capacity != arenaCapacity) {
+            // the arena was grown to fit the result, which moves the records
+            arenaCapacity = capacity;
+            arena.refresh();
+        }
+        rv = arena.returnCode(offset);
+        length = arena.length(offset);
+        if (length > bytes.length) {
+            bytes = new byte[Math.max(length, bytes.length * 2)];
+            byteBuffer = ByteBuffer.wrap(bytes);
+        }
+        arena.read(offset, bytes);
+        arena.reset();
+        charLength = -1;
+    }
+
+    boolean borrowed() {
+        return borrowed;
+    }
+
+    void borrowed(final boolean isBorrowed) {
+        borrowed = isBorrowed;
+    }
+
+    /**
+     * Releases the native memory of the holder.
+     */
+    void close() {
+        arena.close();
+    }
+
+    private void decode() {
+        if (charLength < 0) {
+            // a UTF-8 byte never decodes into more than one char
+            if (length > chars.length) {
+                chars = new char[Math.max(length, chars.length * 2)];
+                charBuffer = CharBuffer.wrap(chars);
+            }
+            byteBuffer.limit(length).position(0);
+            charBuffer.clear();
+            decoder.reset();
+            decoder.decode(byteBuffer, charBuffer, true);
+            decoder.flush(charBuffer);
+            charLength = charBuffer.position();
+        }
+    }
+}
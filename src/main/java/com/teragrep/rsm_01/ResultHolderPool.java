@@ -0,0 +1,200 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool of reusable result holders. Every borrowed holder must be released back to the pool, a holder that is never
+ * released keeps its native memory. With leak tracking enabled, the stack of every borrow is captured so that the
+ * holders that were not released can be traced to the code that borrowed them.
+ */
+public final class ResultHolderPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultHolderPool.class);
+    private static final int DEFAULT_MAX_IDLE = 64;
+
+    private final int maxIdle;
+    private final boolean trackLeaks;
+    private final Queue<ResultHolder> idle;
+    private final AtomicInteger idleCount;
+    private final AtomicInteger outstanding;
+    private final Map<ResultHolder, Throwable> borrowSites;
+    private final LongAdder created;
+
+    /**
+     * Leak tracking is enabled when debug logging is enabled for the pool.
+     */
+    public ResultHolderPool() {
+        this(DEFAULT_MAX_IDLE, LOGGER.isDebugEnabled());
+    }
+
+    /**
+     * @param maxIdle    Maximum number of released holders kept for reuse, the rest are closed.
+     * @param trackLeaks Capture the stack of every borrow to report holders that were not released.
+     */
+    public ResultHolderPool(final int maxIdle, final boolean trackLeaks) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("Maximum idle holders must not be negative, got " + maxIdle);
+        }
+        this.maxIdle = maxIdle;
+        this.trackLeaks = trackLeaks;
+        this.idle = new ConcurrentLinkedQueue<>();
+        this.idleCount = new AtomicInteger();
+        this.outstanding = new AtomicInteger();
+        this.borrowSites = new ConcurrentHashMap<>();
+        this.created = new LongAdder();
+    }
+
+    /**
+     * Borrow a holder from the pool, creating a new one if there are no idle holders.
+     *
+     * @return result holder that must be released after use
+     */
+    public ResultHolder borrow() {
+        ResultHolder holder = idle.poll();
+        if (holder == null) {
+            holder = new ResultHolder();
+            created.increment();
+        }
+        else {
+            idleCount.decrementAndGet();
+        }
+        holder.borrowed(true);
+        outstanding.incrementAndGet();
+        if (trackLeaks) {
+            borrowSites.put(holder, new Throwable("Result holder borrowed here"));
+        }
+        return holder;
+    }
+
+    /**
+     * Return a holder to the pool. The holder must not be used after it has been released.
+     *
+     * @param holder Holder borrowed from this pool.
+     * @throws IllegalArgumentException if the holder is not borrowed.
+     */
+    public void release(final ResultHolder holder) {
+        if (!holder.borrowed()) {
+            throw new IllegalArgumentException("Result holder is not borrowed, it has already been released");
+        }
+        holder.borrowed(false);
+        outstanding.decrementAndGet();
+        if (trackLeaks) {
+            borrowSites.remove(holder);
+        }
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(holder);
+        }
+        else {
+            idleCount.decrementAndGet();
+            holder.close();
+        }
+    }
+
+    /**
+     * Return the number of holders that are borrowed and not yet released.
+     *
+     * @return number of outstanding holders
+     */
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Return the number of holders the pool has created, which stays flat when the holders are reused.
+     *
+     * @return number of created holders
+     */
+    public long created() {
+        return created.sum();
+    }
+
+    /**
+     * Logs a warning with the borrowing stack for every holder that has not been released. Stacks are only available
+     * with leak tracking enabled, otherwise only the number of outstanding holders is logged.
+     *
+     * @return number of outstanding holders
+     */
+    public int reportLeaks() {
+        final int count = outstanding.get();
+        if (trackLeaks) {
+            for (final Throwable borrowSite : borrowSites.values()) {
+                LOGGER.warn("Result holder was not released", borrowSite);
+            }
+        }
+        else if (count > 0) {
+            LOGGER
+                    .warn(
+                            "<{}> result holders were not released, enable leak tracking to see where they were"
+                                    + " borrowed",
+                            count
+                    );
+        }
+        return count;
+    }
+
+    /**
+     * Closes the idle holders and reports the holders that were not released.
+     */
+    void close() {
+        reportLeaks();
+        ResultHolder holder = idle.poll();
+        while (holder != null) {
+            idleCount.decrementAndGet();
+            holder.close();
+            holder = idle.poll();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Finds rules in a version 2 rulebase that slow down normalization or are redundant: rules starting with an unbounded
+ * parser, which liblognorm tries on almost every message, and rules shadowed by an earlier rule with the same
+ * structure. Literal prefixes shared by several rules are reported as well. The analysis also produces a rewritten
+ * rulebase, where shadowed rules are removed and shared prefixes are factored out with prefix=. liblognorm already
+ * merges shared prefixes in its parse DAG, so factoring them out makes the rulebase shorter but not faster.
+ */
+public final class RulebaseAnalyzer {
+
+    private static final int DEFAULT_MIN_SHARED_PREFIX = 8;
+    private static final Pattern DIRECTIVE = Pattern.compile("^[a-z]+=.*");
+    // parsers that match any text up to the end of the message or up to a terminator
+    private static final Set<String> GENERIC_PARSERS = new HashSet<>(Arrays.asList("rest", "string-to", "char-to"));
+
+    private final String rulebase;
+    private final int minSharedPrefix;
+
+    public RulebaseAnalyzer(final String rulebase) {
+        this(rulebase, DEFAULT_MIN_SHARED_PREFIX);
+    }
+
+    /**
+     * @param rulebase        Version 2 rulebase text.
+     * @param minSharedPrefix Shortest literal prefix in characters that is reported as shared.
+     */
+    public RulebaseAnalyzer(final String rulebase, final int minSharedPrefix) {
+        if (minSharedPrefix < 1) {
+            throw new IllegalArgumentException("Minimum shared prefix must be at least 1, got " + minSharedPrefix);
+        }
+        this.rulebase = rulebase;
+        this.minSharedPrefix = minSharedPrefix;
+    }
+
+    /**
+     * Analyze the rulebase.
+     *
+     * @return findings and the rewritten rulebase
+     * @throws IllegalArgumentException if the rulebase is not using version 2.
+     */
+    public RulebaseReport analyze() {
+        final String[] lines = rulebase.split("\r?\n", -1);
+        final List<RulebaseRule> rules = new ArrayList<>();
+        boolean versioned = false;
+        boolean seen = false;
+        boolean prefixed = false;
+        String prefix = "";
+        boolean factorable = true;
+        for (int i = 0; i < lines.length; i++) {
+            final String line = lines[i];
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (!seen) {
+                versioned = "version=2".equals(line.trim());
+                seen = true;
+            }
+            if (line.startsWith("rule=")) {
+                final int colon = line.indexOf(':');
+                if (colon < 0) {
+                    factorable = false;
+                }
+                else {
+                    final String tags = line.substring("rule=".length(), colon);
+                    rules.add(new RulebaseRule(i + 1, tags, prefix, line.substring(colon + 1)));
+                }
+            }
+            else if (line.startsWith("prefix=")) {
+                prefixed = true;
+                prefix = line.substring("prefix=".length());
+            }
+            else if (!DIRECTIVE.matcher(line).matches()) {
+                // continuation of a multi-line definition, rules can not be moved around safely
+                factorable = false;
+            }
+        }
+        if (!versioned) {
+            throw new IllegalArgumentException("Rulebase is not using version 2");
+        }
+
+        final List<RulebaseFinding> findings = new ArrayList<>();
+        final Set<Integer> shadowed = shadowed(rules, findings);
+        for (final RulebaseRule rule : rules) {
+            final String parser = rule.leadingParser();
+            if (GENERIC_PARSERS.contains(parser)) {
+                final String message = "Rule starts with the unbounded parser " + parser
+                        + ", which matches almost any message; start the rule with literal text or a more specific"
+                        + " parser";
+                findings.add(new RulebaseFinding(FindingKind.GENERIC_LEADING_PARSER, rule.line(), message));
+            }
+        }
+        final List<List<RulebaseRule>> groups = new ArrayList<>();
+        final List<String> prefixes = new ArrayList<>();
+        // prefixes of rules that follow a prefix= line depend on it, they are not factored again
+        if (!prefixed) {
+            sharedPrefixes(rules, shadowed, groups, prefixes);
+            for (int i = 0; i < groups.size(); i++) {
+                final List<RulebaseRule> group = groups.get(i);
+                final List<Integer> groupLines = new ArrayList<>(group.size());
+                for (final RulebaseRule rule : group) {
+                    groupLines.add(rule.line());
+                }
+                final String message = group.size() + " rules on lines " + groupLines + " share the literal prefix \""
+                        + prefixes.get(i) + "\"; factor it out with prefix=";
+                findings.add(new RulebaseFinding(FindingKind.SHARED_PREFIX, groupLines.get(0), message));
+            }
+        }
+        findings.sort(Comparator.comparingInt(RulebaseFinding::line));
+
+        final String rewritten;
+        if (factorable) {
+            rewritten = rewritten(lines, shadowed, groups, prefixes);
+        }
+        else {
+            rewritten = rulebase;
+        }
+        return new RulebaseReport(rulebase, Collections.unmodifiableList(findings), rewritten);
+    }
+
+    private static Set<Integer> shadowed(final List<RulebaseRule> rules, final List<RulebaseFinding> findings) {
+        final Map<String, RulebaseRule> structures = new HashMap<>();
+        final Set<Integer> shadowed = new HashSet<>();
+        for (final RulebaseRule rule : rules) {
+            final RulebaseRule earlier = structures.putIfAbsent(rule.structure(), rule);
+            if (earlier != null) {
+                shadowed.add(rule.line());
+                final String message = "Rule has the same structure as the rule on line " + earlier.line()
+                        + " and never produces a result of its own; remove it";
+                findings.add(new RulebaseFinding(FindingKind.SHADOWED_RULE, rule.line(), message));
+            }
+        }
+        return shadowed;
+    }
+
+    private void sharedPrefixes(
+            final List<RulebaseRule> rules,
+            final Set<Integer> shadowed,
+            final List<List<RulebaseRule>> groups,
+            final List<String> prefixes
+    ) {
+        final List<RulebaseRule> candidates = new ArrayList<>();
+        for (final RulebaseRule rule : rules) {
+            if (!shadowed.contains(rule.line()) && rule.leadingLiteral().length() >= minSharedPrefix) {
+                candidates.add(rule);
+            }
+        }
+        candidates.sort(Comparator.comparing(RulebaseRule::leadingLiteral));
+        List<RulebaseRule> group = new ArrayList<>();
+        String prefix = "";
+        for (final RulebaseRule rule : candidates) {
+            final String shared = group.isEmpty() ? rule.leadingLiteral() : common(prefix, rule.leadingLiteral());
+            if (!group.isEmpty() && shared.length() < minSharedPrefix) {
+                addGroup(group, prefix, groups, prefixes);
+                group = new ArrayList<>();
+                prefix = rule.leadingLiteral();
+            }
+            else {
+                prefix = shared;
+            }
+            group.add(rule);
+        }
+        addGroup(group, prefix, groups, prefixes);
+    }
+
+    private static String common(final String prefix, final String literal) {
+        int length = 0;
+        final int max = Math.min(prefix.length(), literal.length());
+        while (length < max && prefix.charAt(length) == literal.charAt(length)) {
+            length++;
+        }
+        return prefix.substring(0, length);
+    }
+
+    private void addGroup(
+            final List<RulebaseRule> group,
+            final String prefix,
+            final List<List<RulebaseRule>> groups,
+            final List<String> prefixes
+    ) {
+        // trailing whitespace of a prefix= line is easily lost, it stays with the rules instead
+        int length = prefix.length();
+        while (length > 0 && Character.isWhitespace(prefix.charAt(length - 1))) {
+            length--;
+        }
+        // the rest of every rule must not be empty
+        for (final RulebaseRule rule : group) {
+            length = Math.min(length, rule.pattern().length() - 1);
+        }
+        if (group.size() > 1 && length >= minSharedPrefix) {
+            group.sort(Comparator.comparingInt(RulebaseRule::line));
+            groups.add(group);
+            prefixes.add(prefix.substring(0, length));
+        }
+    }
+
+    private static String rewritten(
+            final String[] lines,
+            final Set<Integer> shadowed,
+            final List<List<RulebaseRule>> groups,
+            final List<String> prefixes
+    ) {
+        // rules of a group are written together where the first of them was
+        final Map<Integer, Integer> groupStarts = new HashMap<>();
+        final Set<Integer> grouped = new HashSet<>();
+        for (int i = 0; i < groups.size(); i++) {
+            groupStarts.put(groups.get(i).get(0).line(), i);
+            for (final RulebaseRule rule : groups.get(i)) {
+                grouped.add(rule.line());
+            }
+        }
+        final StringBuilder rewritten = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            final int line = i + 1;
+            final Integer group = groupStarts.get(line);
+            if (group != null) {
+                final String prefix = prefixes.get(group);
+                rewritten.append("prefix=").append(prefix).append('\n');
+                for (final RulebaseRule rule : groups.get(group)) {
+                    rewritten
+                            .append("rule=")
+                            .append(rule.tags())
+                            .append(':')
+                            .append(rule.pattern().substring(prefix.length()))
+                            .append('\n');
+                }
+                rewritten.append("prefix=\n");
+            }
+            else if (!shadowed.contains(line) && !grouped.contains(line)) {
+                rewritten.append(lines[i]);
+                if (i < lines.length - 1) {
+                    rewritten.append('\n');
+                }
+            }
+        }
+        return rewritten.toString();
+    }
+}
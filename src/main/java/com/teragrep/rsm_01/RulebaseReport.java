@@ -0,0 +1,120 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Result of a RulebaseAnalyzer run.
+ */
+public final class RulebaseReport {
+
+    private final String original;
+    private final List<RulebaseFinding> findings;
+    private final String rewritten;
+
+    public RulebaseReport(final String original, final List<RulebaseFinding> findings, final String rewritten) {
+        this.original = original;
+        this.findings = findings;
+        this.rewritten = rewritten;
+    }
+
+    /**
+     * Return the findings in the order of the rulebase lines.
+     *
+     * @return findings of the analysis
+     */
+    public List<RulebaseFinding> findings() {
+        return findings;
+    }
+
+    /**
+     * Return the rulebase with shadowed rules removed and shared prefixes factored out. The rewritten rulebase produces
+     * the same results as the original, it is shorter but not faster. Rulebases containing multi-line definitions are
+     * returned unchanged.
+     *
+     * @return rewritten rulebase text
+     */
+    public String rewritten() {
+        return rewritten;
+    }
+
+    /**
+     * Loads both the original and the rewritten rulebase the same way LognormFactory loads a rulebase file, including
+     * the rulebase version check.
+     *
+     * @throws IOException              if the rulebases can not be written to a temporary file.
+     * @throws IllegalArgumentException if liblognorm fails to load either rulebase.
+     */
+    public void validate() throws IOException {
+        load(original);
+        load(rewritten);
+    }
+
+    private static void load(final String rulebase) throws IOException {
+        final File file = File.createTempFile("rsm_01-", ".rulebase");
+        try {
+            Files.write(file.toPath(), rulebase.getBytes(StandardCharsets.UTF_8));
+            new LognormFactory(file).lognorm().close();
+        }
+        finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder report = new StringBuilder();
+        for (final RulebaseFinding finding : findings) {
+            report.append(finding).append('\n');
+        }
+        return report.toString();
+    }
+}
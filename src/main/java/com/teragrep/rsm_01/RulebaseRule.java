@@ -0,0 +1,194 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A single rule= line of a version 2 rulebase, split into its literal text and fields.
+ */
+final class RulebaseRule {
+
+    private static final Pattern JSON_TYPE = Pattern.compile("\"type\"\\s*:\\s*\"([^\"]+)\"");
+
+    private final int line;
+    private final String tags;
+    private final String prefix;
+    private final String pattern;
+
+    /**
+     * @param line    Line number of the rule.
+     * @param tags    Tags of the rule.
+     * @param prefix  Value of the prefix= line in effect for the rule.
+     * @param pattern Pattern of the rule as written after the tags.
+     */
+    RulebaseRule(final int line, final String tags, final String prefix, final String pattern) {
+        this.line = line;
+        this.tags = tags;
+        this.prefix = prefix;
+        this.pattern = pattern;
+    }
+
+    int line() {
+        return line;
+    }
+
+    String tags() {
+        return tags;
+    }
+
+    String pattern() {
+        return pattern;
+    }
+
+    /**
+     * Return the literal text at the start of the rule including the prefix, as written in the rulebase, up to the
+     * first field.
+     *
+     * @return leading literal text, empty if the rule starts with a field
+     */
+    String leadingLiteral() {
+        final String effective = prefix + pattern;
+        final int percent = effective.indexOf('%');
+        return percent < 0 ? effective : effective.substring(0, percent);
+    }
+
+    /**
+     * Return the type of the field the rule starts with, including the prefix.
+     *
+     * @return parser type, empty if the rule starts with literal text
+     */
+    String leadingParser() {
+        final String effective = prefix + pattern;
+        String type = "";
+        if (effective.startsWith("%") && !effective.startsWith("%%")) {
+            final int end = fieldEnd(effective, 0);
+            if (end > 0) {
+                type = type(effective.substring(1, end));
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Return the structure of the rule: the literal text and the field types and arguments without the field names.
+     * Rules with the same structure match the same messages.
+     *
+     * @return structure of the rule
+     */
+    String structure() {
+        final String effective = prefix + pattern;
+        final StringBuilder structure = new StringBuilder();
+        int position = 0;
+        while (position < effective.length()) {
+            final char c = effective.charAt(position);
+            if (c == '%' && effective.startsWith("%%", position)) {
+                structure.append('%');
+                position += 2;
+            }
+            else if (c == '%' && fieldEnd(effective, position) > 0) {
+                final int end = fieldEnd(effective, position);
+                final String field = effective.substring(position + 1, end);
+                // the name is replaced, the parser and its arguments are kept
+                structure.append("\u0000").append(withoutName(field)).append("\u0000");
+                position = end + 1;
+            }
+            else {
+                structure.append(c);
+                position++;
+            }
+        }
+        return structure.toString();
+    }
+
+    private static int fieldEnd(final String effective, final int start) {
+        final int end;
+        if (effective.startsWith("%{", start)) {
+            final int close = effective.indexOf("}%", start);
+            end = close < 0 ? -1 : close + 1;
+        }
+        else {
+            end = effective.indexOf('%', start + 1);
+        }
+        return end;
+    }
+
+    private static String type(final String field) {
+        String type = "";
+        if (field.startsWith("{")) {
+            final Matcher matcher = JSON_TYPE.matcher(field);
+            if (matcher.find()) {
+                type = matcher.group(1);
+            }
+        }
+        else {
+            final int colon = field.indexOf(':');
+            if (colon >= 0) {
+                int end = colon + 1;
+                while (
+                    end < field.length() && (Character.isLetterOrDigit(field.charAt(end)) || field.charAt(end) == '-')
+                ) {
+                    end++;
+                }
+                type = field.substring(colon + 1, end);
+            }
+        }
+        return type;
+    }
+
+    private static String withoutName(final String field) {
+        final String structure;
+        if (field.startsWith("{")) {
+            structure = field.replaceAll("\"name\"\\s*:\\s*\"[^\"]*\"\\s*,?", "");
+        }
+        else {
+            final int colon = field.indexOf(':');
+            structure = colon < 0 ? field : field.substring(colon);
+        }
+        return structure;
+    }
+}
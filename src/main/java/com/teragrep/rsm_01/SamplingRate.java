@@ -0,0 +1,143 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free rate limit that admits either every Nth event or at most N events per second. Thread-safe.
+ */
+public final class SamplingRate {
+
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final SamplingMode mode;
+    private final int rate;
+    private final AtomicLong events;
+    private final AtomicLong windowStart;
+    private final AtomicLong windowEvents;
+    private final LongAdder rejected;
+    private final AtomicLong unreported;
+
+    public SamplingRate(final SamplingMode mode, final int rate) {
+        this(
+                mode,
+                rate,
+                new AtomicLong(),
+                new AtomicLong(System.nanoTime()),
+                new AtomicLong(),
+                new LongAdder(),
+                new AtomicLong()
+        );
+    }
+
+    public SamplingRate(
+            final SamplingMode mode,
+            final int rate,
+            final AtomicLong events,
+            final AtomicLong windowStart,
+            final AtomicLong windowEvents,
+            final LongAdder rejected,
+            final AtomicLong unreported
+    ) {
+        if (rate < 1) {
+            throw new IllegalArgumentException("Sampling rate must be at least 1, got " + rate);
+        }
+        this.mode = mode;
+        this.rate = rate;
+        this.events = events;
+        this.windowStart = windowStart;
+        this.windowEvents = windowEvents;
+        this.rejected = rejected;
+        this.unreported = unreported;
+    }
+
+    /**
+     * Return true if the event is admitted.
+     *
+     * @return true if the event is admitted, false if it is over the rate
+     */
+    public boolean admit() {
+        final boolean admitted;
+        if (mode == SamplingMode.ONE_IN_N) {
+            admitted = events.incrementAndGet() % rate == 0;
+        }
+        else {
+            final long now = System.nanoTime();
+            final long start = windowStart.get();
+            if (now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+                windowEvents.set(0);
+            }
+            admitted = windowEvents.incrementAndGet() <= rate;
+        }
+        if (!admitted) {
+            rejected.increment();
+            unreported.incrementAndGet();
+        }
+        return admitted;
+    }
+
+    /**
+     * Return the number of events that were not admitted.
+     *
+     * @return number of rejected events
+     */
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Return the number of events that were not admitted since the previous call and start counting again from zero.
+     * Concurrent callers never report the same rejected event twice.
+     *
+     * @return number of events rejected since the previous call
+     */
+    public long takeRejected() {
+        return unreported.getAndSet(0);
+    }
+}
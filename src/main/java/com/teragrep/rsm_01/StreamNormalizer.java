@@ -0,0 +1,339 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Normalizes a stream of messages without creating objects per message. The stream is read into an off-heap buffer,
+ * the messages are normalized by address and length directly from that buffer and the results are handed to a sink
+ * through a result arena that is reset after every message. A partial message at the end of the buffer is moved to the
+ * start of the buffer before the next read. The stream is not read while the sink is not ready. Not thread-safe.
+ */
+public final class StreamNormalizer implements AutoCloseable {
+
+    private static final int DEFAULT_BUFFER_CAPACITY = 64 * 1024;
+    private static final int MIN_BUFFER_CAPACITY = 16;
+    private static final int MAX_OCTET_COUNT_DIGITS = 9;
+    private static final long MIN_PAUSE_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_PAUSE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final JavaLognormImpl lognorm;
+    private final ReadableByteChannel channel;
+    private final NormalizedSink sink;
+    private final Framing framing;
+    private final byte delimiter;
+    private final ByteBuffer buffer;
+    private final Pointer base;
+    private final ResultArena arena;
+    private final LongAdder lines;
+    private final LongAdder dropped;
+    private final LongAdder pauses;
+
+    // unconsumed data is between start and end, scan is where the search for the next delimiter continues
+    private int start;
+    private int end;
+    private int scan;
+    // bytes of an oversized message still to be skipped, -1 skips until the next delimiter
+    private long skip;
+
+    public StreamNormalizer(final JavaLognormImpl lognorm, final InputStream stream, final NormalizedSink sink) {
+        this(lognorm, Channels.newChannel(stream), sink);
+    }
+
+    public StreamNormalizer(
+            final JavaLognormImpl lognorm,
+            final ReadableByteChannel channel,
+            final NormalizedSink sink
+    ) {
+        this(lognorm, channel, sink, Framing.DELIMITER, (byte) '\n', DEFAULT_BUFFER_CAPACITY);
+    }
+
+    /**
+     * Messages longer than the buffer capacity are dropped. The result arena is sized to four times the buffer
+     * capacity, results that do not fit into it are dropped as well.
+     *
+     * @param lognorm        Normalizer to normalize the messages with.
+     * @param channel        Channel to read the messages from, not closed by the normalizer.
+     * @param sink           Sink to pass the results to.
+     * @param framing        How the messages are separated in the stream.
+     * @param delimiter      Byte that terminates a message when the framing is DELIMITER.
+     * @param bufferCapacity Size of the off-heap read buffer in bytes.
+     */
+    public StreamNormalizer(
+            final JavaLognormImpl lognorm,
+            final ReadableByteChannel channel,
+            final NormalizedSink sink,
+            final Framing framing,
+            final byte delimiter,
+            final int bufferCapacity
+    ) {
+        if (bufferCapacity < MIN_BUFFER_CAPACITY || bufferCapacity > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException(
+                    "Buffer capacity must be between " + MIN_BUFFER_CAPACITY + " and " + Integer.MAX_VALUE / 4
+                            + " bytes, got " + bufferCapacity
+            );
+        }
+        this.lognorm = lognorm;
+        this.channel = channel;
+        this.sink = sink;
+        this.framing = framing;
+        this.delimiter = delimiter;
+        this.buffer = ByteBuffer.allocateDirect(bufferCapacity);
+        this.base = Native.getDirectBufferPointer(buffer);
+        this.arena = new ResultArena(bufferCapacity * 4);
+        this.lines = new LongAdder();
+        this.dropped = new LongAdder();
+        this.pauses = new LongAdder();
+        this.start = 0;
+        this.end = 0;
+        this.scan = 0;
+        this.skip = 0;
+    }
+
+    /**
+     * Reads and normalizes messages until the end of the stream. A message without a delimiter at the end of the
+     * stream is normalized as well.
+     *
+     * @throws IOException              if reading the channel fails.
+     * @throws IllegalArgumentException if the octet count of a message is invalid.
+     */
+    public void normalizeStream() throws IOException {
+        boolean open = true;
+        while (open) {
+            if (framing == Framing.DELIMITER) {
+                delimitedFrames();
+            }
+            else {
+                octetCountedFrames();
+            }
+            open = fill();
+        }
+        if (framing == Framing.DELIMITER && skip == 0 && end > start) {
+            dispatch(start, end - start);
+        }
+        else if (framing == Framing.OCTET_COUNTING && skip == 0 && end > start) {
+            // incomplete octet counted message at the end of the stream
+            dropped.increment();
+        }
+        start = 0;
+        end = 0;
+        scan = 0;
+        skip = 0;
+    }
+
+    /**
+     * Return the number of messages passed to the sink.
+     *
+     * @return number of normalized messages
+     */
+    public long lines() {
+        return lines.sum();
+    }
+
+    /**
+     * Return the number of messages that were dropped because they did not fit into the buffer, their result did not
+     * fit into the arena or the message size guard rejected them.
+     *
+     * @return number of dropped messages
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Return the number of times reading was paused because the sink was not ready.
+     *
+     * @return number of pauses
+     */
+    public long pauses() {
+        return pauses.sum();
+    }
+
+    /**
+     * Releases the result arena. The channel is owned by the caller.
+     */
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private void delimitedFrames() {
+        for (int i = scan; i < end; i++) {
+            if (buffer.get(i) == delimiter) {
+                if (skip == 0) {
+                    dispatch(start, i - start);
+                }
+                else {
+                    skip = 0;
+                }
+                start = i + 1;
+            }
+        }
+        scan = end;
+    }
+
+    private void octetCountedFrames() {
+        boolean complete = true;
+        while (complete) {
+            if (skip > 0) {
+                final int skipped = (int) Math.min(skip, end - start);
+                start += skipped;
+                skip -= skipped;
+            }
+            complete = false;
+            int length = 0;
+            int digits = 0;
+            for (int i = start; skip == 0 && i < end && !complete; i++) {
+                final byte b = buffer.get(i);
+                if (b == ' ' && digits > 0) {
+                    final int frame = i + 1;
+                    if (length > buffer.capacity() - (frame - start)) {
+                        dropped.increment();
+                        skip = length;
+                        start = frame;
+                        complete = true;
+                    }
+                    else if (end - frame >= length) {
+                        dispatch(frame, length);
+                        start = frame + length;
+                        complete = true;
+                    }
+                    else {
+                        // wait for the rest of the message
+                        break;
+                    }
+                }
+                else if (b >= '0' && b <= '9' && digits < MAX_OCTET_COUNT_DIGITS) {
+                    length = length * 10 + (b - '0');
+                    digits++;
+                }
+                else {
+                    throw new IllegalArgumentException(
+                            "Invalid octet count at offset " + (i - start) + " of a message"
+                    );
+                }
+            }
+        }
+        scan = start;
+    }
+
+    private void dispatch(final int offset, final int length) {
+        if (length == 0) {
+            return;
+        }
+        awaitReady();
+        int result;
+        try {
+            result = lognorm.normalize(base, offset, length, arena);
+        }
+        catch (final IllegalArgumentException e) {
+            result = -1;
+        }
+        if (result < 0) {
+            dropped.increment();
+        }
+        else {
+            sink.accept(arena, result);
+            lines.increment();
+        }
+        arena.reset();
+    }
+
+    private void awaitReady() {
+        if (!sink.ready()) {
+            pauses.increment();
+            long pause = MIN_PAUSE_NANOS;
+            while (!sink.ready()) {
+                LockSupport.parkNanos(pause);
+                pause = Math.min(pause * 2, MAX_PAUSE_NANOS);
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (end == buffer.capacity()) {
+            if (skip < 0) {
+                // still skipping a message longer than the buffer
+                start = end;
+            }
+            else if (start == 0) {
+                // message longer than the buffer, only possible with delimiter framing
+                dropped.increment();
+                skip = -1;
+                start = end;
+            }
+        }
+        if (start == end) {
+            start = 0;
+            end = 0;
+            scan = 0;
+        }
+        else if (end == buffer.capacity()) {
+            buffer.limit(end).position(start);
+            buffer.compact();
+            scan -= start;
+            end -= start;
+            start = 0;
+        }
+        buffer.limit(buffer.capacity()).position(end);
+        final int read = channel.read(buffer);
+        if (read > 0) {
+            end += read;
+        }
+        return read >= 0;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class BatchLognormImplTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchLognormImplTest.class);
+
+    @Test
+    public void normalizeBatchTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (BatchLognormImpl batchLognormImpl = lognormFactory.batchLognorm(2)) {
+                List<BatchResult> results = batchLognormImpl.normalize(Arrays.asList("offline", "online", "öäå"));
+                Assertions
+                        .assertEquals(
+                                Arrays
+                                        .asList(
+                                                new BatchResult(0, "{ \"all\": \"offline\" }"),
+                                                new BatchResult(0, "{ \"all\": \"online\" }"),
+                                                new BatchResult(0, "{ \"all\": \"öäå\" }")
+                                        ),
+                                results
+                        );
+            }
+        });
+    }
+
+    @Test
+    public void normalizeBatchFailureTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (BatchLognormImpl batchLognormImpl = lognormFactory.batchLognorm(2)) {
+                List<BatchResult> results = batchLognormImpl
+                        .normalize(Arrays.asList("Quantity: 5", "unparseable"));
+                Assertions.assertTrue(results.get(0).isSuccess());
+                Assertions.assertFalse(results.get(1).isSuccess());
+                Assertions.assertEquals(-1000, results.get(1).returnCode());
+            }
+        });
+    }
+
+    @Test
+    public void normalizeEmptyBatchTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (BatchLognormImpl batchLognormImpl = lognormFactory.batchLognorm(1)) {
+                Assertions.assertEquals(Collections.emptyList(), batchLognormImpl.normalize(Collections.emptyList()));
+            }
+        });
+    }
+
+    @Test
+    public void workersTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (BatchLognormImpl batchLognormImpl = lognormFactory.batchLognorm(3)) {
+                Assertions.assertEquals(3, batchLognormImpl.workers());
+            }
+        });
+    }
+
+    @Test
+    public void invalidWorkersTest() {
+        LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+        IllegalArgumentException e = Assertions
+                .assertThrows(IllegalArgumentException.class, () -> lognormFactory.batchLognorm(0));
+        Assertions.assertEquals("Batch normalization requires at least one worker, got 0", e.getMessage());
+    }
+
+    /**
+     * Compares the native worker pool against a java thread pool where every thread owns a JavaLognormImpl.
+     */
+    @Test
+    @Tag("benchmark")
+    public void batchBenchmarkTest() {
+        assertDoesNotThrow(() -> {
+            final int workers = 4;
+            final int batchSize = 10000;
+            final int rounds = 10;
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%\nrule=:%all:rest%");
+            List<String> lines = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                lines.add("Quantity: " + i);
+            }
+
+            List<String> nativeResults = new ArrayList<>(batchSize);
+            long nativeNanos;
+            try (BatchLognormImpl batchLognormImpl = lognormFactory.batchLognorm(workers)) {
+                // the pool and its contexts are built before timing, like the contexts of the java pool
+                long nativeStart = System.nanoTime();
+                for (int round = 0; round < rounds; round++) {
+                    nativeResults.clear();
+                    for (BatchResult result : batchLognormImpl.normalize(lines)) {
+                        nativeResults.add(result.json());
+                    }
+                }
+                nativeNanos = System.nanoTime() - nativeStart;
+            }
+
+            List<JavaLognormImpl> contexts = new ArrayList<>(workers);
+            for (int i = 0; i < workers; i++) {
+                contexts.add(lognormFactory.lognorm());
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(workers);
+            List<String> javaResults = new ArrayList<>(batchSize);
+            long javaStart = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                List<Future<List<String>>> futures = new ArrayList<>(workers);
+                int chunk = batchSize / workers;
+                for (int w = 0; w < workers; w++) {
+                    JavaLognormImpl javaLognormImpl = contexts.get(w);
+                    List<String> share = lines.subList(w * chunk, (w + 1) * chunk);
+                    futures.add(executor.submit(() -> {
+                        List<String> normalized = new ArrayList<>(share.size());
+                        for (String line : share) {
+                            normalized.add(javaLognormImpl.normalize(line));
+                        }
+                        return normalized;
+                    }));
+                }
+                javaResults.clear();
+                for (Future<List<String>> future : futures) {
+                    javaResults.addAll(future.get());
+                }
+            }
+            long javaNanos = System.nanoTime() - javaStart;
+            executor.shutdown();
+            for (JavaLognormImpl javaLognormImpl : contexts) {
+                javaLognormImpl.close();
+            }
+
+            LOGGER
+                    .info(
+                            "{} rounds of {} messages with {} workers: native pool {} ms, java pool {} ms", rounds,
+                            batchSize, workers, nativeNanos / 1000000, javaNanos / 1000000
+                    );
+            Assertions.assertEquals(javaResults, nativeResults);
+            Assertions
+                    .assertTrue(
+                            nativeNanos < javaNanos * 3 / 2,
+                            "native pool took " + nativeNanos / 1000000 + " ms, java pool " + javaNanos / 1000000
+                                    + " ms"
+                    );
+        });
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class ContextCacheTest {
+
+    @Test
+    public void prewarmTest() {
+        assertDoesNotThrow(() -> {
+            try (ContextCache cache = new ContextCache()) {
+                LognormSettings settings = new LognormSettings().withCache(cache);
+                LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+                lognormFactory.prewarm(3, Arrays.asList("offline", "online"));
+                Assertions.assertEquals(3, cache.size());
+            }
+        });
+    }
+
+    @Test
+    public void lognormFromCacheTest() {
+        assertDoesNotThrow(() -> {
+            try (ContextCache cache = new ContextCache()) {
+                LognormSettings settings = new LognormSettings().withCache(cache);
+                LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+                lognormFactory.prewarm(1);
+                try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                    Assertions.assertEquals("{ \"all\": \"offline\" }", javaLognormImpl.normalize("offline"));
+                }
+                Assertions.assertEquals(1, cache.hits());
+                Assertions.assertEquals(0, cache.size());
+            }
+        });
+    }
+
+    @Test
+    public void cacheMissTest() {
+        assertDoesNotThrow(() -> {
+            try (ContextCache cache = new ContextCache()) {
+                LognormSettings settings = new LognormSettings().withCache(cache);
+                LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+                try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                    Assertions.assertEquals("{ \"all\": \"offline\" }", javaLognormImpl.normalize("offline"));
+                }
+                Assertions.assertEquals(1, cache.misses());
+            }
+        });
+    }
+
+    @Test
+    public void sharedCacheKeyTest() {
+        assertDoesNotThrow(() -> {
+            try (ContextCache cache = new ContextCache()) {
+                LibJavaLognorm.OptionsStruct opts = new LibJavaLognorm.OptionsStruct();
+                opts.CTXOPT_ADD_ORIGINALMSG = true;
+                LognormSettings settings = new LognormSettings().withCache(cache);
+                LognormFactory prewarmed = new LognormFactory("rule=:%all:rest%", settings);
+                LognormFactory otherOptions = new LognormFactory(opts, "rule=:%all:rest%", false, settings);
+                prewarmed.prewarm(1);
+                // Contexts with different options must not be shared
+                try (JavaLognormImpl javaLognormImpl = otherOptions.lognorm()) {
+                    Assertions
+                            .assertEquals(
+                                    "{ \"all\": \"offline\", \"originalmsg\": \"offline\" }",
+                                    javaLognormImpl.normalize("offline")
+                            );
+                }
+                Assertions.assertEquals(1, cache.size());
+            }
+        });
+    }
+
+    @Test
+    public void batchLognormFromCacheTest() {
+        assertDoesNotThrow(() -> {
+            try (ContextCache cache = new ContextCache()) {
+                LognormSettings settings = new LognormSettings().withCache(cache);
+                LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+                lognormFactory.prewarm(2);
+                try (BatchLognormImpl batchLognormImpl = lognormFactory.batchLognorm(3)) {
+                    Assertions.assertEquals(3, batchLognormImpl.workers());
+                }
+                Assertions.assertEquals(2, cache.hits());
+                Assertions.assertEquals(0, cache.size());
+            }
+        });
+    }
+
+    @Test
+    public void timeToReadyTest() {
+        assertDoesNotThrow(() -> {
+            try (ContextCache cache = new ContextCache()) {
+                LognormSettings settings = new LognormSettings().withCache(cache);
+                LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+                Duration timeToReady = lognormFactory.prewarm(2);
+                Assertions.assertEquals(timeToReady, cache.timeToReady());
+            }
+        });
+    }
+
+    @Test
+    public void closeTest() {
+        assertDoesNotThrow(() -> {
+            ContextCache cache = new ContextCache();
+            LognormSettings settings = new LognormSettings().withCache(cache);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+            lognormFactory.prewarm(2);
+            cache.close();
+            Assertions.assertEquals(0, cache.size());
+        });
+    }
+
+    @Test
+    public void factoryCloseTest() {
+        assertDoesNotThrow(() -> {
+            ContextCache cache;
+            try (LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%")) {
+                lognormFactory.prewarm(2);
+                cache = lognormFactory.contextCache();
+                Assertions.assertEquals(2, cache.size());
+            }
+            Assertions.assertEquals(0, cache.size());
+        });
+    }
+}
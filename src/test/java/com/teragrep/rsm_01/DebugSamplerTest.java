@@ -0,0 +1,167 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class DebugSamplerTest {
+
+    private static final String RULEBASE = "rule=:Quantity: %N:word%";
+
+    @Test
+    public void sampleFailureTest() {
+        DebugSampler sampler = new DebugSampler(new SamplingRate(SamplingMode.ONE_IN_N, 1), 10);
+        LognormSettings settings = new LognormSettings().withSampler(sampler);
+        LognormFactory lognormFactory = new LognormFactory(RULEBASE, settings);
+        try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+            Assertions.assertEquals("{ \"N\": \"5\" }", javaLognormImpl.normalize("Quantity: 5"));
+            Assertions
+                    .assertThrows(IllegalArgumentException.class, () -> javaLognormImpl.normalize("unparseable"));
+        }
+        List<DebugSample> samples = sampler.samples();
+        Assertions.assertEquals(1, samples.size());
+        Assertions.assertEquals("unparseable", samples.get(0).line());
+        Assertions.assertEquals(-1000, samples.get(0).returnCode());
+        Assertions.assertFalse(samples.get(0).trace().isEmpty());
+        Assertions.assertEquals(1, sampler.sampled());
+    }
+
+    @Test
+    public void unsampledTest() {
+        DebugSampler sampler = new DebugSampler(new SamplingRate(SamplingMode.ONE_IN_N, 2), 10);
+        LognormSettings settings = new LognormSettings().withSampler(sampler);
+        LognormFactory lognormFactory = new LognormFactory(RULEBASE, settings);
+        try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+            // a trace opened on this thread collects any debug output emitted outside of a sampled failure
+            sampler.startTrace();
+            Assertions.assertEquals("{ \"N\": \"5\" }", javaLognormImpl.normalize("Quantity: 5"));
+            // the first failure is not sampled at a rate of one in two
+            Assertions
+                    .assertThrows(IllegalArgumentException.class, () -> javaLognormImpl.normalize("unparseable 1"));
+            sampler.record("probe", 0);
+            Assertions
+                    .assertThrows(IllegalArgumentException.class, () -> javaLognormImpl.normalize("unparseable 2"));
+        }
+        List<DebugSample> samples = sampler.samples();
+        Assertions.assertEquals(2, samples.size());
+        Assertions.assertEquals("probe", samples.get(0).line());
+        Assertions.assertTrue(samples.get(0).trace().isEmpty());
+        Assertions.assertEquals("unparseable 2", samples.get(1).line());
+        Assertions.assertFalse(samples.get(1).trace().isEmpty());
+        Assertions.assertEquals(1, sampler.skipped());
+    }
+
+    @Test
+    public void rateLimitTest() {
+        DebugSampler sampler = new DebugSampler(new SamplingRate(SamplingMode.ONE_IN_N, 2), 10);
+        LognormSettings settings = new LognormSettings().withSampler(sampler);
+        LognormFactory lognormFactory = new LognormFactory(RULEBASE, settings);
+        try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+            for (int i = 0; i < 4; i++) {
+                Assertions
+                        .assertThrows(
+                                IllegalArgumentException.class, () -> javaLognormImpl.normalize("unparseable")
+                        );
+            }
+        }
+        Assertions.assertEquals(2, sampler.sampled());
+        Assertions.assertEquals(2, sampler.skipped());
+    }
+
+    @Test
+    public void capacityTest() {
+        DebugSampler sampler = new DebugSampler(new SamplingRate(SamplingMode.ONE_IN_N, 1), 2);
+        LognormSettings settings = new LognormSettings().withSampler(sampler);
+        LognormFactory lognormFactory = new LognormFactory(RULEBASE, settings);
+        try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+            for (int i = 0; i < 3; i++) {
+                final String line = "unparseable " + i;
+                Assertions.assertThrows(IllegalArgumentException.class, () -> javaLognormImpl.normalize(line));
+            }
+        }
+        List<DebugSample> samples = sampler.samples();
+        Assertions.assertEquals(2, samples.size());
+        // the oldest sample is dropped first
+        Assertions.assertEquals("unparseable 1", samples.get(0).line());
+        Assertions.assertEquals("unparseable 2", samples.get(1).line());
+        Assertions.assertEquals(3, sampler.sampled());
+    }
+
+    @Test
+    public void holderTest() {
+        assertDoesNotThrow(() -> {
+            DebugSampler sampler = new DebugSampler(new SamplingRate(SamplingMode.ONE_IN_N, 1), 10);
+            LognormSettings settings = new LognormSettings().withSampler(sampler);
+            LognormFactory lognormFactory = new LognormFactory(RULEBASE, settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                ResultHolder holder = javaLognormImpl.borrow();
+                javaLognormImpl.normalize("unparseable", holder);
+                Assertions.assertFalse(holder.isSuccess());
+                javaLognormImpl.release(holder);
+            }
+            Assertions.assertEquals("unparseable", sampler.samples().get(0).line());
+            Assertions.assertFalse(sampler.samples().get(0).trace().isEmpty());
+        });
+    }
+
+    @Test
+    public void disabledTest() {
+        DebugSampler sampler = new DebugSampler();
+        LognormSettings settings = new LognormSettings().withSampler(sampler);
+        LognormFactory lognormFactory = new LognormFactory(RULEBASE, settings);
+        try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+            Assertions
+                    .assertThrows(IllegalArgumentException.class, () -> javaLognormImpl.normalize("unparseable"));
+        }
+        Assertions.assertTrue(sampler.samples().isEmpty());
+        Assertions.assertEquals(0, sampler.sampled());
+    }
+}
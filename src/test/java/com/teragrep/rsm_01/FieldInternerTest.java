@@ -0,0 +1,221 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class FieldInternerTest {
+
+    private static final String RULEBASE = "rule=:%host:word% %program:word% %msg:rest%";
+
+    @Test
+    public void normalizeFieldsTest() {
+        assertDoesNotThrow(() -> {
+            try (JavaLognormImpl javaLognormImpl = new LognormFactory(RULEBASE).lognorm()) {
+                Map<String, String> expected = new LinkedHashMap<>();
+                expected.put("host", "srv1");
+                expected.put("program", "sshd");
+                expected.put("msg", "hello");
+                Assertions.assertEquals(expected, javaLognormImpl.normalizeFields("srv1 sshd hello"));
+            }
+        });
+    }
+
+    @Test
+    public void normalizeManyFieldsTest() {
+        assertDoesNotThrow(() -> {
+            StringBuilder rule = new StringBuilder("rule=:%f0:word%");
+            StringBuilder line = new StringBuilder("v0");
+            for (int i = 1; i < 40; i++) {
+                rule.append(" %f").append(i).append(":word%");
+                line.append(" v").append(i);
+            }
+            try (JavaLognormImpl javaLognormImpl = new LognormFactory(rule.toString()).lognorm()) {
+                Map<String, String> fields = javaLognormImpl.normalizeFields(line.toString());
+                Assertions.assertEquals(40, fields.size());
+                Assertions.assertEquals("v39", fields.get("f39"));
+            }
+        });
+    }
+
+    @Test
+    public void internedValueTest() {
+        assertDoesNotThrow(() -> {
+            FieldInterner interner = new FieldInterner(Collections.singleton("host"), 16);
+            LognormSettings settings = new LognormSettings().withInterner(interner);
+            LognormFactory lognormFactory = new LognormFactory(RULEBASE, settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Map<String, String> first = javaLognormImpl.normalizeFields("srv1 sshd hello");
+                Map<String, String> second = javaLognormImpl.normalizeFields("srv1 sshd world");
+                Assertions.assertSame(first.get("host"), second.get("host"));
+                Assertions.assertEquals(1, interner.table("host").hits());
+            }
+        });
+    }
+
+    @Test
+    public void disabledFieldTest() {
+        assertDoesNotThrow(() -> {
+            FieldInterner interner = new FieldInterner(Collections.singleton("host"), 16);
+            LognormSettings settings = new LognormSettings().withInterner(interner);
+            LognormFactory lognormFactory = new LognormFactory(RULEBASE, settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Map<String, String> first = javaLognormImpl.normalizeFields("srv1 sshd hello");
+                Map<String, String> second = javaLognormImpl.normalizeFields("srv1 sshd hello");
+                Assertions.assertNotSame(first.get("msg"), second.get("msg"));
+            }
+        });
+    }
+
+    @Test
+    public void cardinalityCapTest() {
+        InternTable table = new InternTable(2);
+        table.intern("a");
+        table.intern("b");
+        table.intern("c");
+        Assertions.assertEquals(2, table.size());
+        Assertions.assertEquals(1, table.evictions());
+    }
+
+    @Test
+    public void clockEvictionTest() {
+        InternTable table = new InternTable(2);
+        String a = table.intern("a");
+        table.intern("b");
+        table.intern("a");
+        table.intern("c");
+        Assertions.assertSame(a, table.intern("a"));
+        Assertions.assertEquals(2, table.hits());
+        Assertions.assertEquals(1, table.evictions());
+    }
+
+    @Test
+    public void internBytesTest() {
+        InternTable table = new InternTable(4);
+        byte[] bytes = "srv1 and more".getBytes(StandardCharsets.UTF_8);
+        String first = table.intern(bytes, 4);
+        bytes[0] = 'x';
+        Assertions.assertEquals("srv1", first);
+        Assertions.assertSame(first, table.intern("srv1"));
+        Assertions.assertEquals(1, table.size());
+    }
+
+    @Test
+    public void concurrentNormalizeFieldsTest() {
+        assertDoesNotThrow(() -> {
+            FieldInterner interner = new FieldInterner(Collections.singleton("host"), 16);
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            LognormSettings settings = new LognormSettings().withInterner(interner);
+            LognormFactory lognormFactory = new LognormFactory(RULEBASE, settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                List<Future<Boolean>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    final int thread = t;
+                    futures.add(executor.submit(() -> {
+                        boolean matches = true;
+                        for (int i = 0; i < 1000; i++) {
+                            Map<String, String> fields = javaLognormImpl
+                                    .normalizeFields("srv" + thread + " sshd message" + i);
+                            matches &= ("srv" + thread).equals(fields.get("host"));
+                            matches &= ("message" + i).equals(fields.get("msg"));
+                        }
+                        return matches;
+                    }));
+                }
+                for (Future<Boolean> future : futures) {
+                    Assertions.assertTrue(future.get());
+                }
+            }
+            finally {
+                executor.shutdown();
+            }
+            Assertions.assertEquals(4, interner.table("host").size());
+        });
+    }
+
+    @Test
+    public void hitRateTest() {
+        assertDoesNotThrow(() -> {
+            FieldInterner interner = new FieldInterner(Collections.singleton("severity"), 4);
+            LognormSettings settings = new LognormSettings().withInterner(interner);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%severity:word% %msg:rest%", settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                javaLognormImpl.normalizeFields("info started");
+                javaLognormImpl.normalizeFields("info running");
+                javaLognormImpl.normalizeFields("info stopped");
+                javaLognormImpl.normalizeFields("warn restarting");
+            }
+            Assertions.assertEquals(0.5, interner.hitRate());
+        });
+    }
+
+    @Test
+    public void nonStringValuesTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=audit,login:%host:word% %data:json%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Map<String, String> fields = javaLognormImpl.normalizeFields("srv1 {\"a\": 1, \"b\": [true]}");
+                Assertions.assertEquals("srv1", fields.get("host"));
+                // nested objects, arrays, numbers and booleans are returned serialized instead of empty
+                Assertions.assertEquals("{ \"a\": 1, \"b\": [ true ] }", fields.get("data"));
+                Assertions.assertEquals("[ \"audit\", \"login\" ]", fields.get("event.tags"));
+            }
+        });
+    }
+}
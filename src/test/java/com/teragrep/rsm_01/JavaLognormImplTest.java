@@ -48,6 +48,8 @@ package com.teragrep.rsm_01;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class JavaLognormImplTest {
@@ -101,4 +103,39 @@ class JavaLognormImplTest {
         });
     }
 
+    @Test
+    public void rulebaseBytesTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory(new File("src/test/resources/sample.rulebase"));
+            long small;
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                small = javaLognormImpl.rulebaseBytes();
+            }
+            Assertions.assertTrue(small > 0 && small < 16 * 1024 * 1024, "rulebaseBytes() was " + small);
+
+            StringBuilder rulebase = new StringBuilder("version=2\n");
+            for (int i = 0; i < 1000; i++) {
+                rulebase.append("rule=:message").append(i).append(" from %host").append(i).append(":word%\n");
+            }
+            long large;
+            try (JavaLognormImpl javaLognormImpl = new LognormFactory(rulebase.toString()).lognorm()) {
+                large = javaLognormImpl.rulebaseBytes();
+            }
+            Assertions.assertTrue(large > small, "rulebaseBytes() of 1000 rules " + large + " not above " + small);
+        });
+    }
+
+    @Test
+    public void nativeMemoryUsageTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                javaLognormImpl.normalize("offline");
+                NativeMemoryUsage usage = new JavaLognorm.LibraryInformation().nativeMemoryUsage();
+                Assertions.assertNotEquals(0L, usage.liveContexts());
+                Assertions.assertNotEquals(0L, usage.peakResults());
+            }
+        });
+    }
+
 }
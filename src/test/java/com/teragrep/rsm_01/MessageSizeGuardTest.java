@@ -0,0 +1,277 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class MessageSizeGuardTest {
+
+    private static String oversized(int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, 'x');
+        return new String(chars);
+    }
+
+    @Test
+    public void underLimitTest() {
+        assertDoesNotThrow(() -> {
+            MessageSizeGuard guard = new MessageSizeGuard(7, OversizePolicy.REJECT);
+            LognormSettings settings = new LognormSettings().withGuard(guard);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions.assertEquals("{ \"all\": \"offline\" }", javaLognormImpl.normalize("offline"));
+                Assertions.assertEquals(0, guard.rejectedCount());
+            }
+        });
+    }
+
+    @Test
+    public void truncateTest() {
+        assertDoesNotThrow(() -> {
+            MessageSizeGuard guard = new MessageSizeGuard(5, OversizePolicy.TRUNCATE);
+            LognormSettings settings = new LognormSettings().withGuard(guard);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions.assertEquals("{ \"all\": \"offli\" }", javaLognormImpl.normalize("offline"));
+                Assertions.assertEquals(1, guard.truncatedCount());
+            }
+        });
+    }
+
+    @Test
+    public void truncateSurrogatePairTest() {
+        assertDoesNotThrow(() -> {
+            MessageSizeGuard guard = new MessageSizeGuard(2, OversizePolicy.TRUNCATE);
+            LognormSettings settings = new LognormSettings().withGuard(guard);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                // U+1F600 is a surrogate pair, it must not be split in half
+                Assertions.assertEquals("{ \"all\": \"a\" }", javaLognormImpl.normalize("a😀b"));
+            }
+        });
+    }
+
+    @Test
+    public void truncateMultibyteTest() {
+        assertDoesNotThrow(() -> {
+            MessageSizeGuard guard = new MessageSizeGuard(4, OversizePolicy.TRUNCATE);
+            LognormSettings settings = new LognormSettings().withGuard(guard);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                // the limit is in UTF-8 bytes, "aä" is three bytes and the euro sign another three
+                Assertions.assertEquals("{ \"all\": \"aä\" }", javaLognormImpl.normalize("aä€"));
+                Assertions.assertEquals("{ \"all\": \"€\" }", javaLognormImpl.normalize("€€"));
+                Assertions.assertEquals(2, guard.truncatedCount());
+            }
+        });
+    }
+
+    @Test
+    public void truncateStreamMultibyteTest() {
+        assertDoesNotThrow(() -> {
+            MessageSizeGuard guard = new MessageSizeGuard(4, OversizePolicy.TRUNCATE);
+            LognormSettings settings = new LognormSettings().withGuard(guard);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+            List<String> results = new ArrayList<>();
+            NormalizedSink sink = new NormalizedSink() {
+
+                @Override
+                public boolean ready() {
+                    return true;
+                }
+
+                @Override
+                public void accept(final ResultArena arena, final int offset) {
+                    results.add(arena.json(offset));
+                }
+            };
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    StreamNormalizer normalizer = new StreamNormalizer(
+                            javaLognormImpl,
+                            new ByteArrayInputStream("aä€\n€€\n".getBytes(StandardCharsets.UTF_8)),
+                            sink
+                    )
+            ) {
+                normalizer.normalizeStream();
+                // the cut backs off to the start of the multibyte character crossing the limit
+                Assertions.assertEquals(Arrays.asList("{ \"all\": \"aä\" }", "{ \"all\": \"€\" }"), results);
+                Assertions.assertEquals(2, guard.truncatedCount());
+            }
+        });
+    }
+
+    @Test
+    public void rejectTest() {
+        assertDoesNotThrow(() -> {
+            MessageSizeGuard guard = new MessageSizeGuard(5, OversizePolicy.REJECT);
+            LognormSettings settings = new LognormSettings().withGuard(guard);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                IllegalArgumentException e = Assertions
+                        .assertThrows(IllegalArgumentException.class, () -> javaLognormImpl.normalize("offline"));
+                Assertions.assertEquals("Message exceeds the maximum length of 5 bytes", e.getMessage());
+                Assertions.assertEquals(1, guard.rejectedCount());
+            }
+        });
+    }
+
+    @Test
+    public void routeTest() {
+        assertDoesNotThrow(() -> {
+            MessageSizeGuard guard = new MessageSizeGuard(12, "rule=:%all:rest%");
+            LognormSettings settings = new LognormSettings().withGuard(guard);
+            LognormFactory lognormFactory = new LognormFactory("rule=:Quantity: %N:word%", settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions.assertEquals("{ \"N\": \"5\" }", javaLognormImpl.normalize("Quantity: 5"));
+                // the routed message is capped to the maximum length
+                Assertions
+                        .assertEquals("{ \"all\": \"Quantity: 12\" }", javaLognormImpl.normalize("Quantity: 123456"));
+                Assertions.assertEquals(1, guard.routedCount());
+            }
+        });
+    }
+
+    @Test
+    public void routeToArenaTest() {
+        assertDoesNotThrow(() -> {
+            MessageSizeGuard guard = new MessageSizeGuard(12, "rule=:%all:rest%");
+            try (
+                    JavaLognormImpl javaLognormImpl = new LognormFactory(
+                            "rule=:Quantity: %N:word%",
+                            new LognormSettings().withGuard(guard)
+                    ).lognorm();
+                    ResultArena arena = new ResultArena(1024)
+            ) {
+                int offset = javaLognormImpl.normalize("Quantity: 123456", arena);
+                Assertions.assertEquals("{ \"all\": \"Quantity: 12\" }", arena.json(offset));
+            }
+        });
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void rejectLatencyTest() {
+        assertDoesNotThrow(() -> {
+            MessageSizeGuard guard = new MessageSizeGuard(1024, OversizePolicy.REJECT);
+            String message = oversized(4 * 1024 * 1024);
+            LognormSettings settings = new LognormSettings().withGuard(guard);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions.assertTimeout(Duration.ofSeconds(1), () -> {
+                    for (int i = 0; i < 1000; i++) {
+                        Assertions
+                                .assertThrows(IllegalArgumentException.class, () -> javaLognormImpl.normalize(message));
+                    }
+                });
+                Assertions.assertEquals(1000, guard.rejectedCount());
+            }
+        });
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void truncateLatencyTest() {
+        assertDoesNotThrow(() -> {
+            MessageSizeGuard guard = new MessageSizeGuard(1024, OversizePolicy.TRUNCATE);
+            String message = oversized(4 * 1024 * 1024);
+            LognormSettings settings = new LognormSettings().withGuard(guard);
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%", settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions.assertTimeout(Duration.ofSeconds(2), () -> {
+                    for (int i = 0; i < 1000; i++) {
+                        javaLognormImpl.normalize(message);
+                    }
+                });
+                Assertions.assertEquals(1000, guard.truncatedCount());
+            }
+        });
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void routeLatencyTest() {
+        assertDoesNotThrow(() -> {
+            MessageSizeGuard guard = new MessageSizeGuard(1024, "rule=:%all:rest%");
+            String message = oversized(4 * 1024 * 1024);
+            LognormSettings settings = new LognormSettings().withGuard(guard);
+            LognormFactory lognormFactory = new LognormFactory("rule=:Quantity: %N:word%", settings);
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                Assertions.assertTimeout(Duration.ofSeconds(2), () -> {
+                    for (int i = 0; i < 1000; i++) {
+                        javaLognormImpl.normalize(message);
+                    }
+                });
+                Assertions.assertEquals(1000, guard.routedCount());
+            }
+        });
+    }
+
+    @Test
+    public void invalidMaxLengthTest() {
+        IllegalArgumentException e = Assertions
+                .assertThrows(IllegalArgumentException.class, () -> new MessageSizeGuard(0, OversizePolicy.TRUNCATE));
+        Assertions.assertEquals("Maximum message length must be at least 1, got 0", e.getMessage());
+    }
+
+    @Test
+    public void routeWithoutFallbackTest() {
+        IllegalArgumentException e = Assertions
+                .assertThrows(IllegalArgumentException.class, () -> new MessageSizeGuard(10, OversizePolicy.ROUTE));
+        Assertions.assertEquals("Routing oversized messages requires a fallback rulebase", e.getMessage());
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class ResultArenaTest {
+
+    @Test
+    public void normalizeToArenaTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    ResultArena arena = new ResultArena(1024)
+            ) {
+                int first = javaLognormImpl.normalize("offline", arena);
+                int second = javaLognormImpl.normalize("online", arena);
+                Assertions.assertEquals("{ \"all\": \"offline\" }", arena.json(first));
+                Assertions.assertEquals("{ \"all\": \"online\" }", arena.json(second));
+                Assertions.assertEquals(0, arena.returnCode(second));
+            }
+        });
+    }
+
+    @Test
+    public void normalizeToArenaFailureTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    ResultArena arena = new ResultArena(1024)
+            ) {
+                int offset = javaLognormImpl.normalize("unparseable", arena);
+                Assertions.assertEquals(-1000, arena.returnCode(offset));
+            }
+        });
+    }
+
+    @Test
+    public void readTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    ResultArena arena = new ResultArena(1024)
+            ) {
+                int offset = javaLognormImpl.normalize("offline", arena);
+                byte[] destination = new byte[arena.length(offset)];
+                arena.read(offset, destination);
+                Assertions
+                        .assertArrayEquals("{ \"all\": \"offline\" }".getBytes(StandardCharsets.UTF_8), destination);
+            }
+        });
+    }
+
+    @Test
+    public void overflowTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm(); ResultArena arena = new ResultArena(32)) {
+                int offset = javaLognormImpl.normalize("message that does not fit into the arena", arena);
+                Assertions.assertEquals(-1, offset);
+                Assertions.assertEquals(1, arena.overflows());
+                Assertions.assertEquals(0, arena.used());
+            }
+        });
+    }
+
+    @Test
+    public void resetTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    ResultArena arena = new ResultArena(1024)
+            ) {
+                int first = javaLognormImpl.normalize("offline", arena);
+                arena.reset();
+                int second = javaLognormImpl.normalize("online", arena);
+                Assertions.assertEquals(first, second);
+                Assertions.assertEquals("{ \"all\": \"online\" }", arena.json(second));
+            }
+        });
+    }
+
+    @Test
+    public void highWaterMarkTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    ResultArena arena = new ResultArena(1024)
+            ) {
+                javaLognormImpl.normalize("offline", arena);
+                javaLognormImpl.normalize("offline", arena);
+                int used = arena.used();
+                arena.reset();
+                javaLognormImpl.normalize("offline", arena);
+                Assertions.assertEquals(used, arena.highWaterMark());
+                Assertions.assertEquals(1024, arena.capacity());
+            }
+        });
+    }
+
+    @Test
+    public void batchArenaGrowthTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (BatchLognormImpl batchLognormImpl = lognormFactory.batchLognorm(2, 16)) {
+                batchLognormImpl.normalize(Arrays.asList("offline", "online"));
+                Assertions.assertEquals(64, batchLognormImpl.highWaterMark());
+            }
+        });
+    }
+
+    @Test
+    public void invalidCapacityTest() {
+        IllegalArgumentException e = Assertions
+                .assertThrows(IllegalArgumentException.class, () -> new ResultArena(0));
+        Assertions.assertEquals("Arena capacity must be at least 1 byte, got 0", e.getMessage());
+    }
+
+    @Test
+    public void closeTwiceTest() {
+        assertDoesNotThrow(() -> {
+            ResultArena arena = new ResultArena(1024);
+            arena.close();
+            arena.close();
+        });
+    }
+
+    @Test
+    public void useAfterCloseTest() {
+        LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+        try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+            ResultArena arena = new ResultArena(1024);
+            arena.close();
+            IllegalStateException e = Assertions.assertThrows(IllegalStateException.class, arena::reset);
+            Assertions.assertEquals("Result arena is closed", e.getMessage());
+            Assertions.assertThrows(IllegalStateException.class, arena::used);
+            Assertions.assertThrows(IllegalStateException.class, arena::highWaterMark);
+            Assertions
+                    .assertThrows(IllegalStateException.class, () -> javaLognormImpl.normalize("offline", arena));
+        }
+    }
+}
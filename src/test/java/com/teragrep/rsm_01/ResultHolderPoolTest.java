@@ -0,0 +1,241 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class ResultHolderPoolTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultHolderPoolTest.class);
+
+    @Test
+    public void normalizeIntoHolderTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                ResultHolder holder = javaLognormImpl.borrow();
+                javaLognormImpl.normalize("offline", holder);
+                Assertions.assertTrue(holder.isSuccess());
+                Assertions.assertEquals("{ \"all\": \"offline\" }", holder.json());
+                Assertions
+                        .assertEquals(
+                                "{ \"all\": \"offline\" }",
+                                new String(holder.bytes(), 0, holder.length(), StandardCharsets.UTF_8)
+                        );
+                Assertions
+                        .assertEquals("{ \"all\": \"offline\" }", new String(holder.chars(), 0, holder.charLength()));
+                javaLognormImpl.release(holder);
+                Assertions.assertEquals(0, javaLognormImpl.holderPool().outstanding());
+            }
+        });
+    }
+
+    @Test
+    public void reuseTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                ResultHolder first = javaLognormImpl.borrow();
+                javaLognormImpl.normalize("offline", first);
+                byte[] buffer = first.bytes();
+                javaLognormImpl.release(first);
+                ResultHolder second = javaLognormImpl.borrow();
+                javaLognormImpl.normalize("online", second);
+                Assertions.assertSame(first, second);
+                Assertions.assertSame(buffer, second.bytes());
+                Assertions.assertEquals("{ \"all\": \"online\" }", second.json());
+                Assertions.assertEquals(1, javaLognormImpl.holderPool().created());
+                javaLognormImpl.release(second);
+            }
+        });
+    }
+
+    @Test
+    public void failureTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=tag1:Quantity: %N:number%");
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                ResultHolder holder = javaLognormImpl.borrow();
+                javaLognormImpl.normalize("unparseable", holder);
+                Assertions.assertFalse(holder.isSuccess());
+                Assertions.assertEquals(-1000, holder.returnCode());
+                javaLognormImpl.release(holder);
+            }
+        });
+    }
+
+    @Test
+    public void largeResultTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            char[] message = new char[20000];
+            Arrays.fill(message, 'x');
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                ResultHolder holder = javaLognormImpl.borrow();
+                javaLognormImpl.normalize(new String(message), holder);
+                Assertions.assertEquals("{ \"all\": \"" + new String(message) + "\" }", holder.json());
+                // the holder keeps reading from the grown arena
+                javaLognormImpl.normalize("offline", holder);
+                Assertions.assertEquals("{ \"all\": \"offline\" }", holder.json());
+                javaLognormImpl.release(holder);
+            }
+        });
+    }
+
+    @Test
+    public void doubleReleaseTest() {
+        ResultHolderPool pool = new ResultHolderPool(1, false);
+        ResultHolder holder = pool.borrow();
+        pool.release(holder);
+        IllegalArgumentException e = Assertions
+                .assertThrows(IllegalArgumentException.class, () -> pool.release(holder));
+        Assertions.assertEquals("Result holder is not borrowed, it has already been released", e.getMessage());
+        pool.close();
+    }
+
+    @Test
+    public void leakTrackingTest() {
+        ResultHolderPool pool = new ResultHolderPool(1, true);
+        ResultHolder released = pool.borrow();
+        pool.borrow();
+        pool.release(released);
+        Assertions.assertEquals(1, pool.outstanding());
+        Assertions.assertEquals(1, pool.reportLeaks());
+        pool.close();
+    }
+
+    @Test
+    public void maxIdleTest() {
+        ResultHolderPool pool = new ResultHolderPool(1, false);
+        ResultHolder first = pool.borrow();
+        ResultHolder second = pool.borrow();
+        pool.release(first);
+        pool.release(second);
+        ResultHolder reused = pool.borrow();
+        Assertions.assertSame(first, reused);
+        Assertions.assertEquals(2, pool.created());
+        pool.release(reused);
+        pool.close();
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void pooledBenchmarkTest() {
+        assertDoesNotThrow(() -> {
+            final int count = 200000;
+            LognormFactory lognormFactory = new LognormFactory("rule=:%host:word% %program:word% %msg:rest%");
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+                long gcBefore = collections();
+                long allocatedBefore = allocated(threads);
+                long start = System.nanoTime();
+                long checksum = 0;
+                for (int i = 0; i < count; i++) {
+                    checksum += javaLognormImpl.normalize("host" + (i % 16) + " sshd message " + i).length();
+                }
+                long plainNanos = System.nanoTime() - start;
+                long plainAllocated = allocated(threads) - allocatedBefore;
+                long plainCollections = collections() - gcBefore;
+
+                gcBefore = collections();
+                allocatedBefore = allocated(threads);
+                start = System.nanoTime();
+                long pooledChecksum = 0;
+                for (int i = 0; i < count; i++) {
+                    ResultHolder holder = javaLognormImpl.borrow();
+                    javaLognormImpl.normalize("host" + (i % 16) + " sshd message " + i, holder);
+                    pooledChecksum += holder.length();
+                    javaLognormImpl.release(holder);
+                }
+                long pooledNanos = System.nanoTime() - start;
+                long pooledAllocated = allocated(threads) - allocatedBefore;
+                long pooledCollections = collections() - gcBefore;
+
+                LOGGER
+                        .info(
+                                "{} messages: non-pooled {} ms, {} bytes allocated, {} collections;"
+                                        + " pooled {} ms, {} bytes allocated, {} collections",
+                                count, plainNanos / 1000000, plainAllocated, plainCollections,
+                                pooledNanos / 1000000, pooledAllocated, pooledCollections
+                        );
+                Assertions.assertEquals(checksum, pooledChecksum);
+                Assertions.assertEquals(1, javaLognormImpl.holderPool().created());
+                if (plainAllocated >= 0) {
+                    Assertions.assertTrue(pooledAllocated < plainAllocated);
+                }
+            }
+        });
+    }
+
+    private static long allocated(final ThreadMXBean threads) {
+        long allocated = -1;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            allocated = ((com.sun.management.ThreadMXBean) threads)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return allocated;
+    }
+
+    private static long collections() {
+        long collections = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, gc.getCollectionCount());
+        }
+        return collections;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import com.teragrep.rsm_01.harness.SyntheticLogGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class RulebaseAnalyzerTest {
+
+    private static final String RULEBASE = "version=2\n"
+            + "rule=fw:Accepted connection from %src:ipv4% port %port:number%\n"
+            + "rule=fw:Accepted connection to %dst:ipv4%\n" + "rule=:%all:rest%\n"
+            + "rule=fw:Accepted connection from %src:ipv4% port %port:number%\n"
+            + "rule=:Rejected login for %user:word% from %src:ipv4%\n"
+            + "rule=:Rejected login for %user:word% at %time:number%\n" + "rule=:%host:word% daemon: %msg:rest%\n";
+
+    @Test
+    public void findingsTest() {
+        RulebaseReport report = new RulebaseAnalyzer(RULEBASE).analyze();
+        List<FindingKind> kinds = new ArrayList<>();
+        List<Integer> lines = new ArrayList<>();
+        for (RulebaseFinding finding : report.findings()) {
+            kinds.add(finding.kind());
+            lines.add(finding.line());
+        }
+        Assertions
+                .assertEquals(
+                        Arrays
+                                .asList(
+                                        FindingKind.SHARED_PREFIX, FindingKind.GENERIC_LEADING_PARSER,
+                                        FindingKind.SHADOWED_RULE, FindingKind.SHARED_PREFIX
+                                ),
+                        kinds
+                );
+        Assertions.assertEquals(Arrays.asList(2, 4, 5, 6), lines);
+        Assertions
+                .assertEquals(
+                        "2 rules on lines [6, 7] share the literal prefix \"Rejected login for\";"
+                                + " factor it out with prefix=",
+                        report.findings().get(3).message()
+                );
+    }
+
+    @Test
+    public void rewrittenTest() {
+        RulebaseReport report = new RulebaseAnalyzer(RULEBASE).analyze();
+        String expected = "version=2\n" + "prefix=Accepted connection\n"
+                + "rule=fw: from %src:ipv4% port %port:number%\n" + "rule=fw: to %dst:ipv4%\n" + "prefix=\n"
+                + "rule=:%all:rest%\n" + "prefix=Rejected login for\n" + "rule=: %user:word% from %src:ipv4%\n"
+                + "rule=: %user:word% at %time:number%\n" + "prefix=\n" + "rule=:%host:word% daemon: %msg:rest%\n";
+        Assertions.assertEquals(expected, report.rewritten());
+        // the rewritten rulebase has nothing left to factor, only the rule starting with rest remains
+        List<RulebaseFinding> findings = new RulebaseAnalyzer(report.rewritten()).analyze().findings();
+        Assertions.assertEquals(1, findings.size());
+        Assertions.assertEquals(FindingKind.GENERIC_LEADING_PARSER, findings.get(0).kind());
+    }
+
+    @Test
+    public void shadowedByStructureTest() {
+        RulebaseReport report = new RulebaseAnalyzer(
+                "version=2\nrule=:user %name:word% logged in\nrule=:user %login:word% logged in\n"
+        ).analyze();
+        Assertions.assertEquals(1, report.findings().size());
+        Assertions.assertEquals(FindingKind.SHADOWED_RULE, report.findings().get(0).kind());
+        Assertions.assertEquals(3, report.findings().get(0).line());
+        Assertions.assertEquals("version=2\nrule=:user %name:word% logged in\n", report.rewritten());
+    }
+
+    @Test
+    public void versionTest() {
+        IllegalArgumentException e = Assertions
+                .assertThrows(IllegalArgumentException.class, () -> new RulebaseAnalyzer("rule=:%all:rest%").analyze());
+        Assertions.assertEquals("Rulebase is not using version 2", e.getMessage());
+    }
+
+    @Test
+    public void validateTest() {
+        assertDoesNotThrow(() -> new RulebaseAnalyzer(RULEBASE).analyze().validate());
+    }
+
+    @Test
+    public void boundedLeadingParserTest() {
+        RulebaseReport report = new RulebaseAnalyzer(
+                "version=2\nrule=:%host:word% daemon: %msg:rest%\nrule=:%msg:char-to:;%; done\n"
+        ).analyze();
+        Assertions.assertEquals(1, report.findings().size());
+        Assertions.assertEquals(FindingKind.GENERIC_LEADING_PARSER, report.findings().get(0).kind());
+        Assertions.assertEquals(3, report.findings().get(0).line());
+    }
+
+    @Test
+    public void rewrittenResultsTest() {
+        assertDoesNotThrow(() -> {
+            final int count = 10000;
+            RulebaseReport report = new RulebaseAnalyzer(RULEBASE).analyze();
+            SyntheticLogGenerator generator = new SyntheticLogGenerator(RULEBASE, 0, 0, 0.3, 16, 256);
+            List<String> originalResults = new ArrayList<>(count);
+            List<String> rewrittenResults = new ArrayList<>(count);
+            try (
+                    JavaLognormImpl original = new LognormFactory(RULEBASE).lognorm();
+                    JavaLognormImpl rewritten = new LognormFactory(report.rewritten()).lognorm()
+            ) {
+                for (int i = 0; i < count; i++) {
+                    String line = generator.next();
+                    originalResults.add(original.normalize(line));
+                    rewrittenResults.add(rewritten.normalize(line));
+                }
+            }
+            Assertions.assertEquals(originalResults, rewrittenResults);
+        });
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SamplingRateTest {
+
+    @Test
+    public void oneInNTest() {
+        SamplingRate rate = new SamplingRate(SamplingMode.ONE_IN_N, 3);
+        int admitted = 0;
+        for (int i = 0; i < 9; i++) {
+            if (rate.admit()) {
+                admitted++;
+            }
+        }
+        Assertions.assertEquals(3, admitted);
+        Assertions.assertEquals(6, rate.rejected());
+    }
+
+    @Test
+    public void perSecondTest() {
+        SamplingRate rate = new SamplingRate(SamplingMode.PER_SECOND, 2);
+        int admitted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (rate.admit()) {
+                admitted++;
+            }
+        }
+        // the loop may cross into a second window on a slow machine, but never a third
+        Assertions.assertTrue(admitted >= 2 && admitted <= 4, "admitted " + admitted);
+        Assertions.assertEquals(100 - admitted, rate.rejected());
+    }
+
+    @Test
+    public void takeRejectedTest() {
+        SamplingRate rate = new SamplingRate(SamplingMode.ONE_IN_N, 2);
+        for (int i = 0; i < 4; i++) {
+            rate.admit();
+        }
+        Assertions.assertEquals(2, rate.takeRejected());
+        Assertions.assertEquals(0, rate.takeRejected());
+        rate.admit();
+        Assertions.assertEquals(1, rate.takeRejected());
+        Assertions.assertEquals(3, rate.rejected());
+    }
+
+    @Test
+    public void invalidRateTest() {
+        IllegalArgumentException e = Assertions
+                .assertThrows(IllegalArgumentException.class, () -> new SamplingRate(SamplingMode.ONE_IN_N, 0));
+        Assertions.assertEquals("Sampling rate must be at least 1, got 0", e.getMessage());
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class StreamNormalizerTest {
+
+    private static final class CollectingSink implements NormalizedSink {
+
+        private final List<String> results = new ArrayList<>();
+        private int notReady = 0;
+
+        @Override
+        public boolean ready() {
+            // reports not ready every other time to exercise the pausing
+            return notReady++ % 2 == 1;
+        }
+
+        @Override
+        public void accept(final ResultArena arena, final int offset) {
+            results.add(arena.json(offset));
+        }
+    }
+
+    private static ByteArrayInputStream stream(final String data) {
+        return new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void delimiterTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            CollectingSink sink = new CollectingSink();
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    StreamNormalizer normalizer = new StreamNormalizer(
+                            javaLognormImpl,
+                            stream("offline\nonline\n\nlast"),
+                            sink
+                    )
+            ) {
+                normalizer.normalizeStream();
+                Assertions
+                        .assertEquals(
+                                Arrays
+                                        .asList(
+                                                "{ \"all\": \"offline\" }", "{ \"all\": \"online\" }",
+                                                "{ \"all\": \"last\" }"
+                                        ),
+                                sink.results
+                        );
+                Assertions.assertEquals(3, normalizer.lines());
+                Assertions.assertEquals(0, normalizer.dropped());
+                Assertions.assertEquals(3, normalizer.pauses());
+            }
+        });
+    }
+
+    @Test
+    public void octetCountingTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            CollectingSink sink = new CollectingSink();
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    StreamNormalizer normalizer = new StreamNormalizer(
+                            javaLognormImpl,
+                            Channels.newChannel(stream("7 offline6 online4 las")),
+                            sink,
+                            Framing.OCTET_COUNTING,
+                            (byte) '\n',
+                            16
+                    )
+            ) {
+                normalizer.normalizeStream();
+                Assertions
+                        .assertEquals(
+                                Arrays.asList("{ \"all\": \"offline\" }", "{ \"all\": \"online\" }"),
+                                sink.results
+                        );
+                // the last message is incomplete
+                Assertions.assertEquals(1, normalizer.dropped());
+            }
+        });
+    }
+
+    @Test
+    public void invalidOctetCountTest() {
+        LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+        CollectingSink sink = new CollectingSink();
+        try (
+                JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                StreamNormalizer normalizer = new StreamNormalizer(
+                        javaLognormImpl,
+                        Channels.newChannel(stream("x offline")),
+                        sink,
+                        Framing.OCTET_COUNTING,
+                        (byte) '\n',
+                        16
+                )
+        ) {
+            IllegalArgumentException e = Assertions
+                    .assertThrows(IllegalArgumentException.class, normalizer::normalizeStream);
+            Assertions.assertEquals("Invalid octet count at offset 0 of a message", e.getMessage());
+        }
+    }
+
+    @Test
+    public void messageAcrossBufferTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            CollectingSink sink = new CollectingSink();
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    StreamNormalizer normalizer = new StreamNormalizer(
+                            javaLognormImpl,
+                            Channels.newChannel(stream("first message\nsecond message\n")),
+                            sink,
+                            Framing.DELIMITER,
+                            (byte) '\n',
+                            16
+                    )
+            ) {
+                normalizer.normalizeStream();
+                Assertions
+                        .assertEquals(
+                                Arrays.asList("{ \"all\": \"first message\" }", "{ \"all\": \"second message\" }"),
+                                sink.results
+                        );
+            }
+        });
+    }
+
+    @Test
+    public void messageLargerThanBufferTest() {
+        assertDoesNotThrow(() -> {
+            LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+            CollectingSink sink = new CollectingSink();
+            try (
+                    JavaLognormImpl javaLognormImpl = lognormFactory.lognorm();
+                    StreamNormalizer normalizer = new StreamNormalizer(
+                            javaLognormImpl,
+                            Channels.newChannel(stream("message that is longer than the buffer\nshort\n")),
+                            sink,
+                            Framing.DELIMITER,
+                            (byte) '\n',
+                            16
+                    )
+            ) {
+                normalizer.normalizeStream();
+                Assertions.assertEquals(Arrays.asList("{ \"all\": \"short\" }"), sink.results);
+                Assertions.assertEquals(1, normalizer.dropped());
+            }
+        });
+    }
+
+    @Test
+    public void bufferCapacityTest() {
+        LognormFactory lognormFactory = new LognormFactory("rule=:%all:rest%");
+        try (JavaLognormImpl javaLognormImpl = lognormFactory.lognorm()) {
+            IllegalArgumentException e = Assertions
+                    .assertThrows(
+                            IllegalArgumentException.class, () -> new StreamNormalizer(
+                                    javaLognormImpl,
+                                    Channels.newChannel(stream("")),
+                                    new CollectingSink(),
+                                    Framing.DELIMITER,
+                                    (byte) '\n',
+                                    8
+                            )
+                    );
+            Assertions
+                    .assertEquals("Buffer capacity must be between 16 and 536870911 bytes, got 8", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01.harness;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram with 16 sub-buckets per power of two, giving percentiles within about 6 % of the
+ * recorded value. A histogram has a single writer, readers may merge histograms of several threads at any time.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts;
+
+    public LatencyHistogram() {
+        this(new AtomicLongArray(BUCKETS));
+    }
+
+    public LatencyHistogram(final AtomicLongArray counts) {
+        this.counts = counts;
+    }
+
+    private static int index(final long value) {
+        final int index;
+        if (value < SUB_BUCKETS) {
+            index = (int) Math.max(0, value);
+        }
+        else {
+            final int magnitude = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            final int sub = (int) (value >>> magnitude) & (SUB_BUCKETS - 1);
+            index = (magnitude + 1) * SUB_BUCKETS + sub;
+        }
+        return index;
+    }
+
+    private static long upperBound(final int index) {
+        final long bound;
+        if (index < SUB_BUCKETS) {
+            bound = index;
+        }
+        else {
+            final int magnitude = index / SUB_BUCKETS - 1;
+            final long sub = SUB_BUCKETS + index % SUB_BUCKETS;
+            bound = ((sub + 1) << magnitude) - 1;
+        }
+        return bound;
+    }
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos Latency in nanoseconds.
+     */
+    public void record(final long nanos) {
+        final int index = index(nanos);
+        counts.lazySet(index, counts.get(index) + 1);
+    }
+
+    /**
+     * Return the latency at the given percentile over all the given histograms.
+     *
+     * @param histograms Histograms to merge.
+     * @param percentile Percentile between 0 and 100.
+     * @return latency in nanoseconds, 0 if nothing was recorded
+     */
+    public static long percentile(final List<LatencyHistogram> histograms, final double percentile) {
+        final long[] merged = new long[BUCKETS];
+        long total = 0;
+        for (final LatencyHistogram histogram : histograms) {
+            for (int i = 0; i < BUCKETS; i++) {
+                final long count = histogram.counts.get(i);
+                merged[i] += count;
+                total += count;
+            }
+        }
+        final long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        long result = 0;
+        for (int i = 0; i < BUCKETS && total > 0; i++) {
+            seen += merged[i];
+            if (seen >= rank && merged[i] != 0) {
+                result = upperBound(i);
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the number of recorded latencies over all the given histograms.
+     *
+     * @param histograms Histograms to merge.
+     * @return number of recorded values
+     */
+    public static long count(final List<LatencyHistogram> histograms) {
+        long total = 0;
+        for (final LatencyHistogram histogram : histograms) {
+            for (int i = 0; i < BUCKETS; i++) {
+                total += histogram.counts.get(i);
+            }
+        }
+        return total;
+    }
+}
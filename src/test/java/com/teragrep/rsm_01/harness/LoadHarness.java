@@ -0,0 +1,285 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01.harness;
+
+import com.teragrep.rsm_01.JavaLognorm;
+import com.teragrep.rsm_01.JavaLognormImpl;
+import com.teragrep.rsm_01.LognormFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives LognormFactory and JavaLognormImpl with synthetic traffic across a number of threads, either at a target
+ * rate or as fast as possible, and reports latency percentiles, throughput, garbage collection, RSS and native memory
+ * usage over time. At a target rate latencies are measured from the intended start time of each message, so that a
+ * stalled thread shows up in the percentiles instead of hiding it. Runs locally without any external services.
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.teragrep.rsm_01.harness.LoadHarness \
+ *     -Dexec.args="rulebase.file threads rate seconds [unparsedRatio repeatRatio medianLength maxLength]"
+ * </pre>
+ *
+ * A rate of 0 runs flat out. After the load run the harness checks that native memory does not grow across
+ * lognorm()/close() cycles.
+ */
+public final class LoadHarness {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadHarness.class);
+
+    private final LognormFactory factory;
+    private final String rulebase;
+    private final int threads;
+    private final long rate;
+    private final Duration duration;
+    private final Duration reportInterval;
+    private final double unparsedRatio;
+    private final double repeatRatio;
+    private final int medianTextLength;
+    private final int maxTextLength;
+
+    public LoadHarness(
+            final String rulebase,
+            final int threads,
+            final long rate,
+            final Duration duration,
+            final Duration reportInterval,
+            final double unparsedRatio,
+            final double repeatRatio,
+            final int medianTextLength,
+            final int maxTextLength
+    ) {
+        this(
+                new LognormFactory(rulebase),
+                rulebase,
+                threads,
+                rate,
+                duration,
+                reportInterval,
+                unparsedRatio,
+                repeatRatio,
+                medianTextLength,
+                maxTextLength
+        );
+    }
+
+    public LoadHarness(
+            final LognormFactory factory,
+            final String rulebase,
+            final int threads,
+            final long rate,
+            final Duration duration,
+            final Duration reportInterval,
+            final double unparsedRatio,
+            final double repeatRatio,
+            final int medianTextLength,
+            final int maxTextLength
+    ) {
+        this.factory = factory;
+        this.rulebase = rulebase;
+        this.threads = threads;
+        this.rate = rate;
+        this.duration = duration;
+        this.reportInterval = reportInterval;
+        this.unparsedRatio = unparsedRatio;
+        this.repeatRatio = repeatRatio;
+        this.medianTextLength = medianTextLength;
+        this.maxTextLength = maxTextLength;
+    }
+
+    /**
+     * Runs the load and returns the totals.
+     *
+     * @return load report
+     * @throws InterruptedException if interrupted while waiting for the load threads.
+     */
+    public LoadReport run() throws InterruptedException {
+        final ProcessMetrics metrics = new ProcessMetrics();
+        final List<LatencyHistogram> histograms = new ArrayList<>(threads);
+        final List<Thread> workers = new ArrayList<>(threads);
+        final LongAdder messages = new LongAdder();
+        final LongAdder unparsed = new LongAdder();
+        final long gcCountBefore = metrics.gcCount();
+        final long gcMillisBefore = metrics.gcMillis();
+        final long rssBefore = metrics.rssBytes();
+        final long start = System.nanoTime();
+        final long deadline = start + duration.toNanos();
+        // Nanoseconds between messages of a single thread, 0 when running flat out
+        final long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(threads) / rate : 0;
+
+        for (int t = 0; t < threads; t++) {
+            final LatencyHistogram histogram = new LatencyHistogram();
+            final SyntheticLogGenerator generator = new SyntheticLogGenerator(
+                    rulebase,
+                    t,
+                    unparsedRatio,
+                    repeatRatio,
+                    medianTextLength,
+                    maxTextLength
+            );
+            histograms.add(histogram);
+            final Thread worker = new Thread(
+                    () -> drive(generator, histogram, messages, unparsed, start, deadline, interval),
+                    "load-" + t
+            );
+            workers.add(worker);
+            worker.start();
+        }
+
+        long lastMessages = 0;
+        long lastReport = start;
+        while (System.nanoTime() < deadline) {
+            final long sleep = Math.min(reportInterval.toNanos(), deadline - System.nanoTime());
+            TimeUnit.NANOSECONDS.sleep(Math.max(0, sleep));
+            final long now = System.nanoTime();
+            final long total = messages.sum();
+            LOGGER
+                    .info(
+                            "elapsed={}s throughput={}/s p99={}us gc={} ({} ms) rss={} KiB native={}",
+                            TimeUnit.NANOSECONDS.toSeconds(now - start),
+                            (total - lastMessages) * 1000000000L / Math.max(1, now - lastReport),
+                            LatencyHistogram.percentile(histograms, 99) / 1000, metrics.gcCount() - gcCountBefore,
+                            metrics.gcMillis() - gcMillisBefore, metrics.rssBytes() / 1024,
+                            new JavaLognorm.LibraryInformation().nativeMemoryUsage()
+                    );
+            lastMessages = total;
+            lastReport = now;
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        return new LoadReport(
+                messages.sum(),
+                unparsed.sum(),
+                elapsed,
+                LatencyHistogram.percentile(histograms, 50),
+                LatencyHistogram.percentile(histograms, 99),
+                LatencyHistogram.percentile(histograms, 99.9),
+                LatencyHistogram.percentile(histograms, 100),
+                metrics.gcCount() - gcCountBefore,
+                metrics.gcMillis() - gcMillisBefore,
+                metrics.rssBytes() - rssBefore
+        );
+    }
+
+    private void drive(
+            final SyntheticLogGenerator generator,
+            final LatencyHistogram histogram,
+            final LongAdder messages,
+            final LongAdder unparsed,
+            final long start,
+            final long deadline,
+            final long interval
+    ) {
+        try (JavaLognormImpl javaLognormImpl = factory.lognorm()) {
+            long sent = 0;
+            long now = System.nanoTime();
+            while (now < deadline) {
+                final String line = generator.next();
+                long begin = now;
+                if (interval > 0) {
+                    begin = start + sent * interval;
+                    if (begin > now) {
+                        LockSupport.parkNanos(begin - now);
+                    }
+                }
+                try {
+                    javaLognormImpl.normalize(line);
+                }
+                catch (final IllegalArgumentException e) {
+                    unparsed.increment();
+                }
+                now = System.nanoTime();
+                histogram.record(now - begin);
+                messages.increment();
+                sent++;
+            }
+        }
+    }
+
+    public static void main(final String[] args) throws IOException, InterruptedException {
+        if (args.length < 4) {
+            System.err
+                    .println(
+                            "usage: LoadHarness rulebase.file threads rate seconds"
+                                    + " [unparsedRatio repeatRatio medianLength maxLength]"
+                    );
+            System.exit(2);
+        }
+        final String rulebase = new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8);
+        final LoadHarness harness = new LoadHarness(
+                rulebase,
+                Integer.parseInt(args[1]),
+                Long.parseLong(args[2]),
+                Duration.ofSeconds(Long.parseLong(args[3])),
+                Duration.ofSeconds(10),
+                args.length > 4 ? Double.parseDouble(args[4]) : 0.05,
+                args.length > 5 ? Double.parseDouble(args[5]) : 0.3,
+                args.length > 6 ? Integer.parseInt(args[6]) : 64,
+                args.length > 7 ? Integer.parseInt(args[7]) : 4096
+        );
+        LOGGER.info("Load: {}", harness.run());
+        final LeakReport leaks = new NativeLeakCheck(new LognormFactory(rulebase), 1000, 100, rulebase).run();
+        LOGGER.info("Leak check: {}", leaks);
+        if (leaks.leaking(64L * 1024 * 1024)) {
+            LOGGER.error("Native memory grows across lognorm()/close() cycles");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01.harness;
+
+import com.teragrep.rsm_01.LognormFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+
+public class LoadHarnessTest {
+
+    private static final String RULEBASE = "rule=:%host:word% %program:word% %msg:rest%\nrule=:Quantity: %N:number%";
+
+    @Test
+    public void generatorDeterminismTest() {
+        SyntheticLogGenerator first = new SyntheticLogGenerator(RULEBASE, 42, 0.1, 0.3, 32, 256);
+        SyntheticLogGenerator second = new SyntheticLogGenerator(RULEBASE, 42, 0.1, 0.3, 32, 256);
+        List<String> firstLines = new ArrayList<>();
+        List<String> secondLines = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            firstLines.add(first.next());
+            secondLines.add(second.next());
+        }
+        Assertions.assertEquals(firstLines, secondLines);
+    }
+
+    @Test
+    public void generatorWithoutRulesTest() {
+        IllegalArgumentException e = Assertions
+                .assertThrows(
+                        IllegalArgumentException.class, () -> new SyntheticLogGenerator("version=2", 0, 0, 0, 1, 1)
+                );
+        Assertions.assertEquals("Rulebase does not contain any rules", e.getMessage());
+    }
+
+    @Test
+    public void histogramPercentileTest() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        List<LatencyHistogram> histograms = Collections.singletonList(histogram);
+        Assertions.assertEquals(100, LatencyHistogram.count(histograms));
+        Assertions.assertEquals(51, LatencyHistogram.percentile(histograms, 50));
+    }
+
+    @Test
+    public void generatorPrefixTest() {
+        SyntheticLogGenerator generator = new SyntheticLogGenerator(
+                "prefix=%host:word%: \nrule=:Quantity: %N:number%\nprefix=\nrule=:Total: %N:number%",
+                0,
+                0,
+                0,
+                32,
+                256
+        );
+        for (int i = 0; i < 100; i++) {
+            String line = generator.next();
+            Assertions.assertTrue(line.matches("[a-zA-Z0-9]+: Quantity: [0-9]+|Total: [0-9]+"), line);
+        }
+    }
+
+    @Test
+    @Tag("soak")
+    public void loadRunTest() {
+        assertDoesNotThrow(() -> {
+            LoadHarness harness = new LoadHarness(
+                    RULEBASE,
+                    2,
+                    0,
+                    Duration.ofSeconds(2),
+                    Duration.ofSeconds(1),
+                    0.05,
+                    0.3,
+                    32,
+                    1024
+            );
+            LoadReport report = harness.run();
+            Assertions.assertTrue(report.throughput() > 1000, report.toString());
+            Assertions.assertTrue(report.p99Nanos() < TimeUnit.MILLISECONDS.toNanos(50), report.toString());
+        });
+    }
+
+    @Test
+    @Tag("soak")
+    public void nativeLeakCheckTest() {
+        assertDoesNotThrow(() -> {
+            LeakReport report = new NativeLeakCheck(new LognormFactory(RULEBASE), 200, 50, RULEBASE).run();
+            Assertions.assertFalse(report.leaking(64L * 1024 * 1024), report.toString());
+        });
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01.harness;
+
+/**
+ * Results of a load run.
+ */
+public final class LoadReport {
+
+    private final long messages;
+    private final long unparsed;
+    private final long elapsedNanos;
+    private final long p50Nanos;
+    private final long p99Nanos;
+    private final long p999Nanos;
+    private final long maxNanos;
+    private final long gcCount;
+    private final long gcMillis;
+    private final long rssGrowthBytes;
+
+    public LoadReport(
+            final long messages,
+            final long unparsed,
+            final long elapsedNanos,
+            final long p50Nanos,
+            final long p99Nanos,
+            final long p999Nanos,
+            final long maxNanos,
+            final long gcCount,
+            final long gcMillis,
+            final long rssGrowthBytes
+    ) {
+        this.messages = messages;
+        this.unparsed = unparsed;
+        this.elapsedNanos = elapsedNanos;
+        this.p50Nanos = p50Nanos;
+        this.p99Nanos = p99Nanos;
+        this.p999Nanos = p999Nanos;
+        this.maxNanos = maxNanos;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+        this.rssGrowthBytes = rssGrowthBytes;
+    }
+
+    public long messages() {
+        return messages;
+    }
+
+    public long unparsed() {
+        return unparsed;
+    }
+
+    public double throughput() {
+        return elapsedNanos == 0 ? 0 : messages * 1e9 / elapsedNanos;
+    }
+
+    public long p99Nanos() {
+        return p99Nanos;
+    }
+
+    public long rssGrowthBytes() {
+        return rssGrowthBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String
+                .format(
+                        "messages=%d unparsed=%d throughput=%.0f/s p50=%dus p99=%dus p99.9=%dus max=%dus"
+                                + " gc=%d (%d ms) rssGrowth=%d KiB",
+                        messages, unparsed, throughput(), p50Nanos / 1000, p99Nanos / 1000, p999Nanos / 1000,
+                        maxNanos / 1000, gcCount, gcMillis, rssGrowthBytes / 1024
+                );
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01.harness;
+
+import com.teragrep.rsm_01.JavaLognorm;
+import com.teragrep.rsm_01.JavaLognormImpl;
+import com.teragrep.rsm_01.LognormFactory;
+import com.teragrep.rsm_01.NativeMemoryUsage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Repeatedly creates a context, normalizes a set of synthetic lines and closes the context, then compares the native
+ * memory accounting and RSS against a baseline taken after a few warmup cycles.
+ */
+public final class NativeLeakCheck {
+
+    private static final int WARMUP_CYCLES = 10;
+
+    private final LognormFactory factory;
+    private final int cycles;
+    private final List<String> lines;
+
+    public NativeLeakCheck(
+            final LognormFactory factory,
+            final int cycles,
+            final int linesPerCycle,
+            final String rulebase
+    ) {
+        this(factory, cycles, lines(rulebase, linesPerCycle));
+    }
+
+    public NativeLeakCheck(final LognormFactory factory, final int cycles, final List<String> lines) {
+        this.factory = factory;
+        this.cycles = cycles;
+        this.lines = lines;
+    }
+
+    private static List<String> lines(final String rulebase, final int count) {
+        final SyntheticLogGenerator generator = new SyntheticLogGenerator(rulebase, 0, 0.1, 0.3, 32, 1024);
+        final List<String> lines = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            lines.add(generator.next());
+        }
+        return lines;
+    }
+
+    /**
+     * Runs the cycles.
+     *
+     * @return growth of the native memory over the cycles
+     */
+    public LeakReport run() {
+        final ProcessMetrics metrics = new ProcessMetrics();
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            cycle();
+        }
+        final NativeMemoryUsage before = new JavaLognorm.LibraryInformation().nativeMemoryUsage();
+        final long rssBefore = metrics.rssBytes();
+        for (int i = 0; i < cycles; i++) {
+            cycle();
+        }
+        final NativeMemoryUsage after = new JavaLognorm.LibraryInformation().nativeMemoryUsage();
+        return new LeakReport(
+                cycles,
+                after.liveContexts() - before.liveContexts(),
+                after.liveResults() - before.liveResults(),
+                after.rulebaseBytes() - before.rulebaseBytes(),
+                metrics.rssBytes() - rssBefore
+        );
+    }
+
+    private void cycle() {
+        try (JavaLognormImpl javaLognormImpl = factory.lognorm()) {
+            for (final String line : lines) {
+                try {
+                    javaLognormImpl.normalize(line);
+                }
+                catch (final IllegalArgumentException e) {
+                    // unparsed lines exercise the error path
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * Teragrep Record Schema Mapper Library for Java (rsm_01)
+ * Copyright (C) 2021-2024 Suomen Kanuuna Oy
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ *
+ * Additional permission under GNU Affero General Public License version 3
+ * section 7
+ *
+ * If you modify this Program, or any covered work, by linking or combining it
+ * with other code, such other code is not for that reason alone subject to any
+ * of the requirements of the GNU Affero GPL version 3 as long as this Program
+ * is the same Program as licensed from Suomen Kanuuna Oy without any additional
+ * modifications.
+ *
+ * Supplemented terms under GNU Affero General Public License version 3
+ * section 7
+ *
+ * Origin of the software must be attributed to Suomen Kanuuna Oy. Any modified
+ * versions must be marked as "Modified version of" The Program.
+ *
+ * Names of the licensors and authors may not be used for publicity purposes.
+ *
+ * No rights are granted for use of trade names, trademarks, or service marks
+ * which are in The Program if any.
+ *
+ * Licensee must indemnify licensors and authors for any liability that these
+ * contractual assumptions impose on licensors and authors.
+ *
+ * To the extent this program is licensed as part of the Commercial versions of
+ * Teragrep, the applicable Commercial License may apply to this file if you as
+ * a licensee so wish it.
+ */
+package com.teragrep.rsm_01.harness;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates log lines shaped after the rules of a rulebase, including the prefixes set with prefix= lines. Every
+ * field of a rule is replaced with a random value of the field type, and a share of the lines is either unparseable
+ * noise or a repeat of a recent line. The length of free text fields follows a log-normal distribution so that most
+ * lines are short and a few are long. Not thread-safe, every thread should use a generator of its own.
+ */
+public final class SyntheticLogGenerator {
+
+    private static final Pattern FIELD = Pattern.compile("%([^%:{]*):?([a-zA-Z0-9-]*)[^%]*%");
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final String[] MONTHS = {
+            "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+    private static final int RECENT = 256;
+
+    private final List<String> patterns;
+    private final Random random;
+    private final double unparsedRatio;
+    private final double repeatRatio;
+    private final int medianTextLength;
+    private final int maxTextLength;
+    private final List<String> recent;
+
+    /**
+     * @param rulebase         Rulebase text, one rule per line.
+     * @param seed             Seed of the random generator, the same seed produces the same lines.
+     * @param unparsedRatio    Share of lines that are random noise, between 0 and 1.
+     * @param repeatRatio      Share of lines that repeat one of the recent lines, between 0 and 1.
+     * @param medianTextLength Median length of free text fields.
+     * @param maxTextLength    Maximum length of free text fields.
+     */
+    public SyntheticLogGenerator(
+            final String rulebase,
+            final long seed,
+            final double unparsedRatio,
+            final double repeatRatio,
+            final int medianTextLength,
+            final int maxTextLength
+    ) {
+        this(
+                patterns(rulebase),
+                new Random(seed),
+                unparsedRatio,
+                repeatRatio,
+                medianTextLength,
+                maxTextLength,
+                new ArrayList<>(RECENT)
+        );
+    }
+
+    public SyntheticLogGenerator(
+            final List<String> patterns,
+            final Random random,
+            final double unparsedRatio,
+            final double repeatRatio,
+            final int medianTextLength,
+            final int maxTextLength,
+            final List<String> recent
+    ) {
+        if (patterns.isEmpty()) {
+            throw new IllegalArgumentException("Rulebase does not contain any rules");
+        }
+        this.patterns = patterns;
+        this.random = random;
+        this.unparsedRatio = unparsedRatio;
+        this.repeatRatio = repeatRatio;
+        this.medianTextLength = medianTextLength;
+        this.maxTextLength = maxTextLength;
+        this.recent = recent;
+    }
+
+    private static List<String> patterns(final String rulebase) {
+        final List<String> patterns = new ArrayList<>();
+        // prefix= applies to the rules that follow it until the next prefix= line
+        String prefix = "";
+        for (final String line : rulebase.split("\n")) {
+            final String trimmed = line.trim();
+            if (line.startsWith("prefix=")) {
+                prefix = line.substring("prefix=".length());
+            }
+            else if (trimmed.startsWith("rule=")) {
+                // rule=[tags]:pattern
+                final int colon = trimmed.indexOf(':');
+                if (colon >= 0) {
+                    patterns.add(prefix + trimmed.substring(colon + 1));
+                }
+            }
+        }
+        return Collections.unmodifiableList(patterns);
+    }
+
+    /**
+     * Return the next synthetic log line.
+     *
+     * @return log line
+     */
+    public String next() {
+        final double dice = random.nextDouble();
+        final String line;
+        if (dice < repeatRatio && !recent.isEmpty()) {
+            line = recent.get(random.nextInt(recent.size()));
+        }
+        else if (dice < repeatRatio + unparsedRatio) {
+            line = "~" + text(textLength(), true);
+        }
+        else {
+            line = fromPattern(patterns.get(random.nextInt(patterns.size())));
+        }
+        if (recent.size() < RECENT) {
+            recent.add(line);
+        }
+        else {
+            recent.set(random.nextInt(RECENT), line);
+        }
+        return line;
+    }
+
+    private String fromPattern(final String pattern) {
+        final StringBuilder line = new StringBuilder();
+        final Matcher matcher = FIELD.matcher(pattern);
+        int position = 0;
+        while (matcher.find()) {
+            line.append(pattern, position, matcher.start());
+            if ("%%".equals(matcher.group())) {
+                // %% is an escaped percent sign
+                line.append('%');
+            }
+            else {
+                line.append(value(matcher.group(2)));
+            }
+            position = matcher.end();
+        }
+        line.append(pattern.substring(position));
+        return line.toString();
+    }
+
+    private String value(final String type) {
+        final String value;
+        switch (type) {
+            case "number":
+                value = Integer.toString(random.nextInt(100000));
+                break;
+            case "float":
+                value = random.nextInt(1000) + "." + random.nextInt(1000);
+                break;
+            case "hexnumber":
+                value = "0x" + Integer.toHexString(random.nextInt());
+                break;
+            case "ipv4":
+                value = random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256) + "."
+                        + random.nextInt(256);
+                break;
+            case "date-rfc3164":
+                value = String
+                        .format(
+                                "%s %2d %02d:%02d:%02d", MONTHS[random.nextInt(12)], 1 + random.nextInt(28),
+                                random.nextInt(24), random.nextInt(60), random.nextInt(60)
+                        );
+                break;
+            case "date-rfc5424":
+                value = String
+                        .format(
+                                "2024-%02d-%02dT%02d:%02d:%02d.%06dZ", 1 + random.nextInt(12), 1 + random.nextInt(28),
+                                random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(1000000)
+                        );
+                break;
+            case "quoted-string":
+                value = "\"" + text(1 + random.nextInt(16), true) + "\"";
+                break;
+            case "whitespace":
+                value = " ";
+                break;
+            case "rest":
+                value = text(textLength(), true);
+                break;
+            default:
+                // word, alpha, char-to, string and the rest of the parsers accept a short alphanumeric run
+                value = text(1 + random.nextInt(12), false);
+                break;
+        }
+        return value;
+    }
+
+    private int textLength() {
+        final double length = medianTextLength * Math.exp(random.nextGaussian());
+        return (int) Math.max(1, Math.min(maxTextLength, length));
+    }
+
+    private String text(final int length, final boolean spaces) {
+        final StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            // Free text contains spaces but never starts or ends with one
+            if (spaces && i > 0 && i < length - 1 && random.nextInt(8) == 0) {
+                text.append(' ');
+            }
+            else {
+                text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+            }
+        }
+        return text.toString();
+    }
+}